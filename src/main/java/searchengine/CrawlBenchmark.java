@@ -0,0 +1,109 @@
+package searchengine;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import searchengine.repository.IndexRepository;
+import searchengine.repository.LemmaRepository;
+import searchengine.repository.PageRepository;
+import searchengine.services.IndexingService;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Замер полного обхода без интернета: {@link SyntheticSite} на локальном порту, {@code IndexingServiceImpl}
+ * и встроенная база H2 (профиль {@code benchmark}). Печатает страницы в секунду, строки базы в секунду и пик кучи.
+ * <p>
+ * Запуск: {@code mvn -Pbenchmark compile exec:java -Dexec.mainClass=searchengine.CrawlBenchmark -Dexec.args="pages=2000 latency-ms=20"}.
+ * Параметры сайта: {@code pages, fan-out, page-size, latency-ms, error-rate, seed}; аргументы вида {@code --ключ=значение}
+ * передаются в Spring, например {@code --crawler-settings.delay-between-requests=50,200}.
+ */
+public class CrawlBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> springArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                springArgs.add(arg);
+            } else if (arg.contains("=")) {
+                options.put(arg.substring(0, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        int pages = Integer.parseInt(options.getOrDefault("pages", "1000"));
+        int fanOut = Integer.parseInt(options.getOrDefault("fan-out", "10"));
+        int pageSize = Integer.parseInt(options.getOrDefault("page-size", "4000"));
+        long latencyMillis = Long.parseLong(options.getOrDefault("latency-ms", "0"));
+        double errorRate = Double.parseDouble(options.getOrDefault("error-rate", "0"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+
+        try (SyntheticSite site = new SyntheticSite(pages, fanOut, pageSize, latencyMillis, errorRate, seed)) {
+            site.start();
+            springArgs.add("--indexing-settings.sites[0].url=" + site.getUrl());
+            springArgs.add("--indexing-settings.sites[0].name=Synthetic");
+
+            try (ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                    .web(WebApplicationType.NONE)
+                    .profiles("benchmark")
+                    .run(springArgs.toArray(String[]::new))) {
+                run(context, site, pages);
+            }
+        }
+    }
+
+    private static void run(ConfigurableApplicationContext context, SyntheticSite site, int pages) throws InterruptedException {
+        IndexingService indexingService = context.getBean(IndexingService.class);
+        HeapSampler heapSampler = new HeapSampler();
+        heapSampler.start();
+
+        long startedAt = System.nanoTime();
+        indexingService.startIndexing();
+        double seconds = (System.nanoTime() - startedAt) / 1_000_000_000.0;
+        heapSampler.interrupt();
+
+        long pageRows = context.getBean(PageRepository.class).count();
+        long lemmaRows = context.getBean(LemmaRepository.class).count();
+        long indexRows = context.getBean(IndexRepository.class).count();
+        long rows = pageRows + lemmaRows + indexRows;
+
+        System.out.printf("Сайт: %d страниц, запросов к серверу %d, внесённых ошибок %d, отдано %.1f МБ%n",
+                pages, site.getRequests(), site.getInjectedErrors(), site.getBytesServed() / 1_048_576.0);
+        System.out.printf("Обход: %.2f с, %.1f страниц/с%n", seconds, pageRows / seconds);
+        System.out.printf("База: page %d, lemma %d, index %d — %.1f строк/с%n", pageRows, lemmaRows, indexRows, rows / seconds);
+        System.out.printf("Пик кучи: %.1f МБ%n", heapSampler.getPeakBytes() / 1_048_576.0);
+    }
+
+    // Использование кучи раз в 50 мс: пики пулов памяти по отдельности завышают общий пик
+    private static final class HeapSampler extends Thread {
+
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final AtomicLong peakBytes = new AtomicLong();
+
+        private HeapSampler() {
+            super("heap-sampler");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                peakBytes.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        long getPeakBytes() {
+            return Math.max(peakBytes.get(), memory.getHeapMemoryUsage().getUsed());
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package searchengine;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Сгенерированный сайт на встроенном HTTP-сервере для замеров обхода без выхода в интернет.
+ * Страница {@code i} доступна по {@code /page/i} (главная — страница 0) и ссылается на следующую страницу
+ * и ещё на {@code fanOut - 1} случайных. Текст набирается из русских слов до {@code pageSize} символов.
+ * Содержимое и ссылки страницы зависят только от её номера и {@code seed}: повторный обход видит тот же сайт.
+ */
+public class SyntheticSite implements AutoCloseable {
+
+    private static final String[] CORPUS = ("""
+            поисковый движок индексирует страницы сайтов и сохраняет леммы слов для быстрого поиска по запросу
+            пользователь вводит запрос а система находит документы где встречаются все слова запроса
+            краулер загружает страницу разбирает ссылки и ставит новые адреса в очередь обхода
+            сервер отвечает медленно когда нагрузка растёт поэтому запросы отправляются с паузой
+            морфологический анализ приводит слова к начальной форме чтобы находить разные формы одного слова
+            в городе прошёл сильный дождь жители вышли на улицы после того как небо прояснилось
+            учёные обнаружили новый вид рыбы в глубоких водах северного моря во время экспедиции
+            правительство обсудило бюджет на следующий год и утвердило расходы на образование и медицину
+            команда выиграла матч в последние минуты и вышла в финал турнира к радости болельщиков
+            компания представила новый телефон с большим экраном и долгой работой батареи
+            леопард постоянно обитает в некоторых районах северного кавказа и иногда выходит к сёлам
+            библиотека открыла читальный зал где собраны редкие книги старинные карты и рукописи
+            весной в парке расцвели деревья и птицы вернулись из тёплых стран к своим гнёздам
+            инженеры построили мост через широкую реку и соединили два берега старого города
+            художник написал картину на которой изображены горы озеро и маленький дом у леса
+            """).trim().split("\\s+");
+
+    private final int pageCount;
+    private final int fanOut;
+    private final int pageSize;
+    private final long latencyMillis;
+    private final double errorRate;
+    private final long seed;
+    private final HttpServer server;
+    private final ExecutorService handlers;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder injectedErrors = new LongAdder();
+    private final LongAdder bytesServed = new LongAdder();
+
+    public SyntheticSite(int pageCount, int fanOut, int pageSize, long latencyMillis, double errorRate, long seed) throws IOException {
+        this.pageCount = Math.max(1, pageCount);
+        this.fanOut = Math.max(1, fanOut);
+        this.pageSize = Math.max(256, pageSize);
+        this.latencyMillis = Math.max(0, latencyMillis);
+        this.errorRate = Math.max(0, Math.min(1, errorRate));
+        this.seed = seed;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.handlers = Executors.newFixedThreadPool(64, runnable -> {
+            Thread thread = new Thread(runnable, "synthetic-site");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/", this::handle);
+        server.setExecutor(handlers);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.sum();
+    }
+
+    public long getBytesServed() {
+        return bytesServed.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.increment();
+            // Задержка ответа: от половины до полутора заданных значений, как у настоящего сервера под нагрузкой
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis / 2 + ThreadLocalRandom.current().nextLong(latencyMillis + 1));
+            }
+            int page = pageNumber(exchange.getRequestURI().getPath());
+            if (page < 0) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                injectedErrors.increment();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            byte[] body = render(page).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            bytesServed.add(body.length);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Номер страницы по пути или -1: robots.txt, sitemap и несуществующие страницы отдают 404
+    private int pageNumber(String path) {
+        if (path.equals("/")) {
+            return 0;
+        }
+        if (!path.startsWith("/page/")) {
+            return -1;
+        }
+        try {
+            int page = Integer.parseInt(path.substring("/page/".length()));
+            return page >= 0 && page < pageCount ? page : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private String render(int page) {
+        Random random = new Random(seed * 31 + page);
+        StringBuilder html = new StringBuilder(pageSize + 1024);
+        html.append("<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>")
+                .append(sentence(random, 6)).append(" — страница ").append(page)
+                .append("</title></head><body><h1>").append(sentence(random, 5)).append("</h1>");
+
+        // Ссылка на следующую страницу делает достижимым весь сайт, остальные — случайные
+        html.append("<nav><a href=\"/page/").append((page + 1) % pageCount).append("\">далее</a>");
+        for (int i = 1; i < fanOut; i++) {
+            html.append(" <a href=\"/page/").append(random.nextInt(pageCount)).append("\">").append(word(random)).append("</a>");
+        }
+        html.append("</nav>");
+
+        int textStart = html.length();
+        while (html.length() - textStart < pageSize) {
+            html.append("<p>").append(sentence(random, 12 + random.nextInt(20))).append(".</p>");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    private static String sentence(Random random, int words) {
+        StringBuilder sentence = new StringBuilder(words * 10);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(word(random));
+        }
+        return sentence.toString();
+    }
+
+    private static String word(Random random) {
+        return CORPUS[random.nextInt(CORPUS.length)];
+    }
+}
@@ -4,6 +4,11 @@ import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 @Getter
 @Setter
@@ -11,6 +16,190 @@ import org.springframework.context.annotation.Configuration;
 @ConfigurationProperties(prefix = "crawler")
 public class CrawlerProperties {
 
-    private int threshold;
     private int maxDepth;
+    // Максимум одновременных HTTP-запросов на один сайт и на весь краулер
+    private int maxInFlightPerSite = 8;
+    private int maxInFlightTotal = 64;
+    // Повторный обход без удаления индекса: условные запросы по ETag/Last-Modified и сравнение хэша
+    private boolean incrementalRecrawl = false;
+    // Соблюдать Disallow и Crawl-delay из robots.txt
+    private boolean respectRobotsTxt = true;
+    // Сколько stopIndexing ждёт завершения обхода после отмены запросов и ожиданий
+    private long stopTimeoutMs = 5000;
+    private Executor executor = new Executor();
+    private Politeness politeness = new Politeness();
+    private Retry retry = new Retry();
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+    private ErrorBudget errorBudget = new ErrorBudget();
+    private Frontier frontier = new Frontier();
+    private Budget budget = new Budget();
+    private Pipeline pipeline = new Pipeline();
+    private Checkpoint checkpoint = new Checkpoint();
+    private Sitemap sitemap = new Sitemap();
+    private Canonicalization canonicalization = new Canonicalization();
+    private Download download = new Download();
+    private Dedup dedup = new Dedup();
+    private LemmaFrequency lemmaFrequency = new LemmaFrequency();
+    private Purge purge = new Purge();
+    private WriteBuffer writeBuffer = new WriteBuffer();
+
+    // Общий пул потоков обхода для всех сайтов; 0 — по числу ядер и без отдельного предела на сайт
+    @Getter
+    @Setter
+    public static class Executor {
+        private int threads = 0;
+        private int maxThreadsPerSite = 0;
+    }
+
+    // Подстройка под хост (AIMD): шаг уменьшения интервала, во сколько раз снижать нагрузку и признаки перегрузки
+    @Getter
+    @Setter
+    public static class Politeness {
+        private boolean adaptive = true;
+        private Duration delayStep = Duration.ofMillis(100);
+        private double backoffFactor = 0.5;
+        // Перегрузка: средняя задержка ответа во столько раз выше базовой или доля ошибок выше порога
+        private double latencyTolerance = 2.0;
+        private double maxErrorRate = 0.2;
+        private Duration maxRetryAfter = Duration.ofMinutes(10);
+    }
+
+    // Повтор загрузки при временных ошибках: паузы растут вдвое от initial-backoff до max-backoff, со случайным разбросом
+    @Getter
+    @Setter
+    public static class Retry {
+        // Попыток на страницу вместе с первой; 1 — без повторов
+        private int maxAttempts = 3;
+        private Duration initialBackoff = Duration.ofSeconds(1);
+        private Duration maxBackoff = Duration.ofSeconds(30);
+        private List<Integer> retryStatuses = new ArrayList<>(List.of(429, 500, 502, 503, 504));
+    }
+
+    // Пауза в запросах к хосту, когда среди последних window-size ответов доля ошибок не ниже failure-rate-threshold
+    @Getter
+    @Setter
+    public static class CircuitBreaker {
+        private boolean enabled = true;
+        private int windowSize = 20;
+        private int minimumRequests = 10;
+        private double failureRateThreshold = 0.5;
+        private Duration openDuration = Duration.ofSeconds(30);
+    }
+
+    // Сайт отмечается FAILED, только если доля неудачных страниц выше max-error-rate (после min-pages страниц)
+    @Getter
+    @Setter
+    public static class ErrorBudget {
+        private double maxErrorRate = 0.5;
+        private int minPages = 20;
+    }
+
+    // Настройки общей очереди обхода сайта
+    @Getter
+    @Setter
+    public static class Frontier {
+        private int expectedUrls = 100_000;
+        private boolean bloomFilterEnabled = false;
+        private double bloomFalsePositiveRate = 0.01;
+        // Веса оценки адреса: штраф за уровень глубины, приоритет и свежесть из sitemap, входящие ссылки (log2)
+        private double depthWeight = 1.0;
+        private double sitemapPriorityWeight = 1.0;
+        private double freshnessWeight = 1.0;
+        private double inboundLinksWeight = 0.5;
+    }
+
+    // Бюджет обхода сайта по умолчанию: 0 — без ограничений; у сайта в indexing-settings можно задать свой
+    @Getter
+    @Setter
+    public static class Budget {
+        private int maxPages = 0;
+        private Duration maxDuration = Duration.ZERO;
+    }
+
+    // Одновременные задачи стадий конвейера в общем пуле и число страниц сайта в конвейере
+    @Getter
+    @Setter
+    public static class Pipeline {
+        private int parseWorkers = 1;
+        private int lemmatizeWorkers = 2;
+        private int persistWorkers = 2;
+        private int queueCapacity = 64;
+    }
+
+    // Периодическое сохранение очереди обхода и продолжение прерванной индексации с контрольной точки
+    @Getter
+    @Setter
+    public static class Checkpoint {
+        private boolean enabled = true;
+        private int intervalSeconds = 30;
+        private boolean resume = true;
+    }
+
+    // Начальное наполнение очереди из sitemap: ограничения на число файлов и адресов
+    @Getter
+    @Setter
+    public static class Sitemap {
+        private boolean enabled = true;
+        private int maxFiles = 50;
+        private int maxUrls = 50_000;
+    }
+
+    // Правила канонизации адресов: какие параметры запроса не влияют на содержимое страницы
+    @Getter
+    @Setter
+    public static class Canonicalization {
+        // Только метки рекламы и сессии: from и подобные на многих сайтах задают период или смещение списка,
+        // их сайт добавляет сам
+        private List<String> ignoredQueryParams = new ArrayList<>(List.of(
+                "utm_*", "fbclid", "gclid", "yclid", "_openstat", "jsessionid", "phpsessid", "sessionid", "sid"));
+        // Отбрасывать строку запроса целиком, как делал прежний расчёт относительного пути
+        private boolean ignoreQuery = false;
+        // По каноническому адресу страница и загружается: сайты с адресами вида /path/ ответили бы 301 на каждую страницу без слэша
+        private boolean stripTrailingSlash = false;
+        // Учитывать <link rel="canonical"> и адрес после редиректа как ключ страницы
+        private boolean followCanonicalLink = true;
+    }
+
+    // Потоковая загрузка: какие типы содержимого читать и предел размера тела страницы
+    @Getter
+    @Setter
+    public static class Download {
+        private DataSize maxPageSize = DataSize.ofMegabytes(5);
+        private List<String> allowedContentTypes = new ArrayList<>(List.of("text/html", "application/xhtml+xml"));
+    }
+
+    // Поиск копий страниц: точный хэш текста и SimHash с допустимым расстоянием Хэмминга
+    @Getter
+    @Setter
+    public static class Dedup {
+        private boolean enabled = true;
+        private int maxHammingDistance = 3;
+        // Короткие тексты (заглушки, страницы ошибок) не сравниваем: их SimHash ненадёжен
+        private int minWords = 30;
+    }
+
+    // Частоты лемм копятся в памяти и записываются в таблицу lemma пакетом раз в flush-interval
+    @Getter
+    @Setter
+    public static class LemmaFrequency {
+        private Duration flushInterval = Duration.ofSeconds(1);
+    }
+
+    // Удаление данных сайта перед переиндексацией: страниц в одной транзакции, 0 — весь сайт одним запросом на таблицу
+    @Getter
+    @Setter
+    public static class Purge {
+        private int chunkSize = 1000;
+    }
+
+    // Отложенная запись новых страниц пакетами: размер пакета, предел буфера и период сброса
+    @Getter
+    @Setter
+    public static class WriteBuffer {
+        private boolean enabled = true;
+        private int batchPages = 100;
+        // Страниц в буфере, после которых стадия persist ждёт записи
+        private int capacity = 400;
+        private Duration flushInterval = Duration.ofMillis(500);
+    }
 }
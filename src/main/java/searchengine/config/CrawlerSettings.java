@@ -5,6 +5,8 @@ import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.List;
+
 // Для маскировки запросов как обычных посещений пользователей
 @Configuration
 @Getter
@@ -14,4 +16,12 @@ public class CrawlerSettings {
 
     private String userAgent;
     private String referrer;
+    // Минимальная и максимальная пауза между запросами к одному хосту, мс
+    private List<Integer> delayBetweenRequests;
+    // Параметры HTTP-клиента: версия протокола, сжатие, таймауты и время жизни простаивающих соединений
+    private String httpVersion = "HTTP_2";
+    private boolean compression = true;
+    private int connectTimeoutMs = 10_000;
+    private int requestTimeoutMs = 30_000;
+    private int keepAliveSeconds = 120;
 }
@@ -3,9 +3,18 @@ package searchengine.config;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.time.Duration;
+
 @Setter
 @Getter
 public class Site {
     private String url;
     private String name;
+    // Доля потоков общего пула: сайт с весом 2 получает вдвое больше задач, чем сайт с весом 1
+    private int weight = 1;
+    // Предел потоков пула для этого сайта; 0 — значение crawler.executor.max-threads-per-site
+    private int maxThreads = 0;
+    // Бюджет обхода сайта; не заданы — значения из crawler.budget
+    private Integer maxPages;
+    private Duration maxCrawlDuration;
 }
@@ -3,6 +3,7 @@ package searchengine.controllers;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import searchengine.dto.statistics.PipelineStatisticsResponse;
 import searchengine.dto.statistics.SearchResponse;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.exceptions.IndexNotReadyException;
@@ -69,6 +70,14 @@ public class ApiController {
         return ResponseEntity.ok(indexingService.stopIndexing());
     }
 
+    @GetMapping("/pipelineStatistics")
+    public ResponseEntity<PipelineStatisticsResponse> pipelineStatistics() {
+        PipelineStatisticsResponse response = new PipelineStatisticsResponse();
+        response.setResult(true);
+        response.setStages(indexingService.getPipelineStatistics());
+        return ResponseEntity.ok(response);
+    }
+
     @GetMapping("/search")
     public ResponseEntity<?> search(
             @RequestParam(value = "query", required = false) String query,
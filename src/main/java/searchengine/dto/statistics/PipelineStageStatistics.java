@@ -0,0 +1,15 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class PipelineStageStatistics {
+    private String site;
+    private String stage;
+    private int workers;
+    private int queueDepth;
+    private int queueCapacity;
+    private long processed;
+    private double throughput;
+    private double averageMillis;
+}
@@ -0,0 +1,11 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class PipelineStatisticsResponse {
+    private boolean result;
+    private List<PipelineStageStatistics> stages;
+}
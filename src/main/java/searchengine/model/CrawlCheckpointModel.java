@@ -0,0 +1,33 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+// Контрольная точка обхода сайта: когда сохранена и какие страницы к этому моменту уже были в базе
+@Entity
+@Getter
+@Setter
+@Table(name = "crawl_checkpoint")
+public class CrawlCheckpointModel {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @OneToOne
+    @JoinColumn(name = "site_id", nullable = false, unique = true)
+    private SiteModel site;
+
+    // Наибольший id страницы сайта на момент сохранения; страницы новее перепроверяются при возобновлении
+    @Column(name = "last_page_id")
+    private Integer lastPageId;
+
+    @Column(name = "pending_urls", nullable = false)
+    private int pendingUrls;
+
+    @Column(name = "saved_at", nullable = false)
+    private LocalDateTime savedAt;
+}
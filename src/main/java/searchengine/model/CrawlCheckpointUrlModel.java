@@ -0,0 +1,34 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+
+// Адрес из очереди обхода, сохранённый в контрольной точке
+@Entity
+@Getter
+@Setter
+@Table(name = "crawl_checkpoint_url",
+        indexes = {
+                @Index(name = "idx_checkpoint_site", columnList = "site_id")
+        })
+public class CrawlCheckpointUrlModel {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @ManyToOne
+    @JoinColumn(name = "site_id", nullable = false)
+    private SiteModel site;
+
+    @Column(name = "path", columnDefinition = "VARCHAR(255)", nullable = false)
+    private String path;
+
+    @Column(name = "url", columnDefinition = "TEXT", nullable = false)
+    private String url;
+
+    @Column(name = "depth", nullable = false)
+    private int depth;
+}
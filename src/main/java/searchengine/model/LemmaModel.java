@@ -9,9 +9,12 @@ import java.util.List;
 @Entity
 @Getter
 @Setter
-@Table(name = "lemma")
+// Ключ (site_id, lemma) нужен пакетному INSERT ... ON DUPLICATE KEY UPDATE: лемма сайта хранится в одной строке
+@Table(name = "lemma", uniqueConstraints = @UniqueConstraint(name = "uk_lemma_site_lemma", columnNames = {"site_id", "lemma"}))
 public class LemmaModel {
 
+    public static final String LEMMA_COLUMN = "VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
@@ -20,7 +23,8 @@ public class LemmaModel {
     @JoinColumn(name = "site_id", nullable = false)
     private SiteModel site;
 
-    @Column(name = "lemma", nullable = false)
+    // Побайтовое сравнение: ключ (site_id, lemma) и поиск строк совпадают с String.equals
+    @Column(name = "lemma", nullable = false, columnDefinition = LEMMA_COLUMN)
     private String lemma;
 
     @Column(name = "frequency", nullable = false)
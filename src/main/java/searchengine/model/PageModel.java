@@ -31,6 +31,33 @@ public class PageModel {
 
     @Column(columnDefinition = "MEDIUMTEXT", nullable = false)
     private String content;
+
+    // Валидаторы HTTP-кэша и хэш содержимого для условного повторного обхода
+    @Column(name = "etag", columnDefinition = "VARCHAR(255)")
+    private String etag;
+
+    @Column(name = "last_modified", columnDefinition = "VARCHAR(64)")
+    private String lastModified;
+
+    @Column(name = "content_hash", columnDefinition = "CHAR(64)")
+    private String contentHash;
+
+    // Результат разбора HTML при индексации: поиск берёт заголовок и сниппет отсюда, не разбирая content
+    @Column(name = "title", columnDefinition = "VARCHAR(1024)")
+    private String title;
+
+    @Column(name = "headings", columnDefinition = "TEXT")
+    private String headings;
+
+    @Column(name = "plain_text", columnDefinition = "MEDIUMTEXT")
+    private String plainText;
+
+    // SimHash текста страницы и путь страницы-оригинала, если эта страница — её копия и не индексируется
+    @Column(name = "simhash")
+    private Long simhash;
+
+    @Column(name = "duplicate_of", columnDefinition = "VARCHAR(255)")
+    private String duplicateOf;
 }
 
 
@@ -0,0 +1,100 @@
+package searchengine.processors;
+
+import searchengine.config.CrawlerProperties;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Интервал между запросами и число одновременных запросов к одному хосту, подстраиваемые по ответам сервера (AIMD).
+ * Пока ответы быстрые и без ошибок, каждые {@code concurrency} успешных ответов интервал уменьшается на шаг,
+ * а предел одновременных запросов растёт на единицу. На 429/503, долю ошибок выше порога или рост задержки
+ * относительно базовой интервал увеличивается, а предел уменьшается в {@code backoffFactor} раз.
+ * Интервал не выходит за границы {@code crawler-settings.delay-between-requests}.
+ */
+public class AdaptiveHostLimit {
+
+    // Вес нового ответа в скользящих средних задержки и доли ошибок
+    private static final double SMOOTHING = 0.2;
+    // Базовая задержка медленно растёт, чтобы хост, ставший медленнее навсегда, перестал считаться перегруженным
+    private static final double BASELINE_DRIFT = 1.01;
+    private static final double JITTER = 0.1;
+
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final int maxConcurrency;
+    private final long delayStepNanos;
+    private final double backoffFactor;
+    private final double latencyTolerance;
+    private final double maxErrorRate;
+
+    private long delayNanos;
+    private int concurrency = 1;
+    private int successes;
+    private double latencyAverage;
+    private double baselineLatency;
+    private double errorRate;
+    // Ответы на запросы, отправленные до последнего снижения, уже учтены этим снижением
+    private long lastBackoffAt = Long.MIN_VALUE;
+
+    public AdaptiveHostLimit(long minDelayNanos, long maxDelayNanos, int maxConcurrency, CrawlerProperties.Politeness settings) {
+        this.minDelayNanos = minDelayNanos;
+        this.maxDelayNanos = maxDelayNanos;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.delayStepNanos = Math.max(1, settings.getDelayStep().toNanos());
+        this.backoffFactor = Math.min(Math.max(settings.getBackoffFactor(), 0.1), 0.9);
+        this.latencyTolerance = Math.max(1.0, settings.getLatencyTolerance());
+        this.maxErrorRate = settings.getMaxErrorRate();
+        // Новый хост начинает с самого осторожного режима: наибольший интервал и один запрос
+        this.delayNanos = maxDelayNanos;
+    }
+
+    // Интервал до следующего запроса: текущее значение с небольшим разбросом, чтобы запросы не шли строго по часам
+    public synchronized long nextInterval() {
+        long jitter = (long) (delayNanos * JITTER);
+        long interval = jitter > 0 ? delayNanos + ThreadLocalRandom.current().nextLong(-jitter, jitter + 1) : delayNanos;
+        return clampDelay(interval);
+    }
+
+    /**
+     * Учитывает ответ на запрос, отправленный в {@code sentAt}.
+     * {@code overloaded} — сервер прямо просит снизить нагрузку (429, 503), {@code failed} — 5xx или ошибка загрузки.
+     */
+    public synchronized void onResponse(long sentAt, long latencyNanos, boolean overloaded, boolean failed) {
+        errorRate += SMOOTHING * ((failed || overloaded ? 1.0 : 0.0) - errorRate);
+        if (!failed && !overloaded) {
+            latencyAverage = latencyAverage == 0 ? latencyNanos : latencyAverage + SMOOTHING * (latencyNanos - latencyAverage);
+            baselineLatency = baselineLatency == 0 ? latencyAverage : Math.min(baselineLatency * BASELINE_DRIFT, latencyAverage);
+        }
+
+        boolean latencyRising = baselineLatency > 0 && latencyAverage > baselineLatency * latencyTolerance;
+        if (overloaded || errorRate > maxErrorRate || latencyRising) {
+            backOff(sentAt);
+        } else if (!failed && ++successes >= concurrency) {
+            successes = 0;
+            delayNanos = clampDelay(delayNanos - delayStepNanos);
+            concurrency = Math.min(maxConcurrency, concurrency + 1);
+        }
+    }
+
+    public synchronized long getDelayNanos() {
+        return delayNanos;
+    }
+
+    public synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    private void backOff(long sentAt) {
+        successes = 0;
+        if (sentAt <= lastBackoffAt) {
+            return;
+        }
+        lastBackoffAt = System.nanoTime();
+        concurrency = Math.max(1, (int) (concurrency * backoffFactor));
+        delayNanos = clampDelay(Math.max((long) (delayNanos / backoffFactor), delayNanos + delayStepNanos));
+    }
+
+    private long clampDelay(long delay) {
+        return Math.max(minDelayNanos, Math.min(maxDelayNanos, delay));
+    }
+}
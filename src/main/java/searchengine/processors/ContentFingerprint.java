@@ -0,0 +1,93 @@
+package searchengine.processors;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+
+// Отпечатки содержимого страниц: по ним повторный обход узнаёт, что страница не менялась, а обход — что это копия
+public final class ContentFingerprint {
+
+    // Признаки SimHash — последовательности из трёх слов: порядок слов различает тексты с общим словарём
+    private static final int SHINGLE_SIZE = 3;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ContentFingerprint() {
+    }
+
+    // SHA-256 содержимого в шестнадцатеричном виде (64 символа)
+    public static String sha256(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(content.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+
+    // Слова текста в нижнем регистре без знаков препинания — общая основа для точного хэша и SimHash
+    public static String[] words(String text) {
+        String normalized = text == null ? "" : text.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{Nd}]+", " ").trim();
+        return normalized.isEmpty() ? new String[0] : normalized.split(" ");
+    }
+
+    // Текст без различий в регистре, пробелах и пунктуации: одинаковые статьи под разными адресами дают один хэш
+    public static String textHash(String[] words) {
+        return sha256(String.join(" ", words));
+    }
+
+    /**
+     * 64-битный SimHash текста: у близких текстов отпечатки отличаются в немногих битах.
+     * Каждая тройка подряд идущих слов голосует своим хэшем за значение каждого бита.
+     */
+    public static long simHash(String[] words) {
+        if (words.length == 0) {
+            return 0L;
+        }
+        int[] votes = new int[64];
+        int shingleSize = Math.min(SHINGLE_SIZE, words.length);
+        for (int start = 0; start + shingleSize <= words.length; start++) {
+            long hash = FNV_OFFSET;
+            for (int i = start; i < start + shingleSize; i++) {
+                hash = fnv(hash, words[i]);
+                hash = fnv(hash, " ");
+            }
+            hash = mix(hash);
+            for (int bit = 0; bit < 64; bit++) {
+                votes[bit] += (hash >>> bit & 1L) == 1L ? 1 : -1;
+            }
+        }
+        long fingerprint = 0L;
+        for (int bit = 0; bit < 64; bit++) {
+            if (votes[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    public static int hammingDistance(long first, long second) {
+        return Long.bitCount(first ^ second);
+    }
+
+    private static long fnv(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // Перемешивание битов (финализатор MurmurHash3): FNV плохо распределяет старшие биты коротких строк
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,50 @@
+package searchengine.processors;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Бюджет обхода сайта: число загружаемых страниц и время от начала обхода.
+ * Очередь выдаёт самые ценные адреса первыми, поэтому обход, остановленный бюджетом,
+ * успевает покрыть важнейшие страницы.
+ */
+@Getter
+public class CrawlBudget {
+
+    private final int maxPages;
+    private final Duration maxDuration;
+    private final long startedAt = System.nanoTime();
+    private final AtomicInteger pagesUsed = new AtomicInteger();
+
+    // 0 страниц или нулевая длительность — без ограничения
+    public CrawlBudget(int maxPages, Duration maxDuration) {
+        this.maxPages = Math.max(0, maxPages);
+        this.maxDuration = maxDuration == null || maxDuration.isNegative() ? Duration.ZERO : maxDuration;
+    }
+
+    public static CrawlBudget unlimited() {
+        return new CrawlBudget(0, Duration.ZERO);
+    }
+
+    // Расходует одну страницу бюджета; false — бюджет исчерпан и страницу загружать не нужно
+    public boolean tryAcquirePage() {
+        if (isTimeExhausted()) {
+            return false;
+        }
+        if (maxPages == 0) {
+            pagesUsed.incrementAndGet();
+            return true;
+        }
+        return pagesUsed.getAndUpdate(used -> used < maxPages ? used + 1 : used) < maxPages;
+    }
+
+    public boolean isExhausted() {
+        return isTimeExhausted() || maxPages > 0 && pagesUsed.get() >= maxPages;
+    }
+
+    private boolean isTimeExhausted() {
+        return !maxDuration.isZero() && System.nanoTime() - startedAt >= maxDuration.toNanos();
+    }
+}
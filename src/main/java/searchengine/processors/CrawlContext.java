@@ -0,0 +1,55 @@
+package searchengine.processors;
+
+import lombok.Getter;
+import searchengine.config.CrawlerProperties;
+import searchengine.config.CrawlerSettings;
+import searchengine.model.SiteModel;
+import searchengine.repository.PageRepository;
+import searchengine.repository.PageValidators;
+import searchengine.repository.SiteRepository;
+import searchengine.services.LemmaService;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Общее состояние обхода одного сайта, которое разделяют все задачи обработки страниц
+@Getter
+public class CrawlContext {
+
+    private final SiteModel site;
+    private final UrlFrontier frontier;
+    private final PageFetcher pageFetcher;
+    private final PageRepository pageRepository;
+    private final SiteRepository siteRepository;
+    private final CrawlerSettings crawlerSettings;
+    private final CrawlerProperties crawlerProperties;
+    private final LemmaService lemmaService;
+    private final TextAnalyzer textAnalyzer;
+    private final AtomicBoolean isIndexingRunning;
+    // Страницы, сохранённые прошлым обходом (путь → валидаторы); пусто при полной переиндексации
+    private final Map<String, PageValidators> knownPages;
+    private final RobotsRules robotsRules;
+    private final UrlCanonicalizer urlCanonicalizer;
+    private final CrawlMetrics crawlMetrics;
+    private final DuplicateIndex duplicateIndex;
+    private final PageWriteBuffer pageWriteBuffer;
+
+    public CrawlContext(SiteModel site, UrlFrontier frontier, PageFetcher pageFetcher, PageRepository pageRepository, SiteRepository siteRepository, CrawlerSettings crawlerSettings, CrawlerProperties crawlerProperties, LemmaService lemmaService, TextAnalyzer textAnalyzer, AtomicBoolean isIndexingRunning, Map<String, PageValidators> knownPages, RobotsRules robotsRules, UrlCanonicalizer urlCanonicalizer, CrawlMetrics crawlMetrics, DuplicateIndex duplicateIndex, PageWriteBuffer pageWriteBuffer) {
+        this.site = site;
+        this.frontier = frontier;
+        this.pageFetcher = pageFetcher;
+        this.pageRepository = pageRepository;
+        this.siteRepository = siteRepository;
+        this.crawlerSettings = crawlerSettings;
+        this.crawlerProperties = crawlerProperties;
+        this.lemmaService = lemmaService;
+        this.textAnalyzer = textAnalyzer;
+        this.isIndexingRunning = isIndexingRunning;
+        this.knownPages = knownPages;
+        this.robotsRules = robotsRules;
+        this.urlCanonicalizer = urlCanonicalizer;
+        this.crawlMetrics = crawlMetrics;
+        this.duplicateIndex = duplicateIndex;
+        this.pageWriteBuffer = pageWriteBuffer;
+    }
+}
@@ -0,0 +1,58 @@
+package searchengine.processors;
+
+import searchengine.config.CrawlerProperties;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Бюджет ошибок обхода сайта: отдельные неудачные страницы не делают сайт FAILED.
+ * Неудачей считается страница, которую не удалось загрузить после всех повторов, ответ 5xx или ошибка обработки.
+ * Бюджет превышен, когда доля неудач выше {@code max-error-rate}; пока обработано меньше {@code min-pages} страниц,
+ * это проверяется только по окончании обхода — иначе сайт провалила бы первая же ошибка.
+ */
+public class CrawlErrorBudget {
+
+    private final double maxErrorRate;
+    private final int minPages;
+    private final AtomicInteger pages = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private volatile String lastError;
+
+    public CrawlErrorBudget(CrawlerProperties.ErrorBudget settings) {
+        this.maxErrorRate = settings.getMaxErrorRate();
+        this.minPages = Math.max(1, settings.getMinPages());
+    }
+
+    public void recordSuccess() {
+        pages.incrementAndGet();
+    }
+
+    public void recordError(String error) {
+        lastError = error;
+        errors.incrementAndGet();
+        pages.incrementAndGet();
+    }
+
+    // Проверка во время обхода: после превышения новые страницы не загружаются
+    public boolean isExceeded() {
+        return pages.get() >= minPages && isRateExceeded();
+    }
+
+    // Проверка по окончании обхода: учитывает и сайты меньше min-pages страниц
+    public boolean isExceededAtEnd() {
+        return pages.get() > 0 && isRateExceeded();
+    }
+
+    public int getErrors() {
+        return errors.get();
+    }
+
+    public String describe() {
+        return String.format("Превышен бюджет ошибок: не удалось обработать %d из %d страниц, последняя ошибка: %s",
+                errors.get(), pages.get(), lastError);
+    }
+
+    private boolean isRateExceeded() {
+        return errors.get() > pages.get() * maxErrorRate;
+    }
+}
@@ -0,0 +1,189 @@
+package searchengine.processors;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerProperties;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Общий для всех сайтов пул рабочих потоков обхода. У каждого сайта своя очередь задач;
+ * потоки обходят сайты по кругу с весами (сайт с весом 3 получает три задачи подряд),
+ * а сайт, у которого уже выполняется {@code maxConcurrent} задач, пропускается до освобождения потока.
+ * Число потоков не зависит от количества сайтов в {@code indexing-settings}.
+ */
+@Component
+@Slf4j
+public class CrawlExecutor {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition taskAvailable = lock.newCondition();
+    private final Map<String, SiteQueue> sites = new HashMap<>();
+    // Сайты, у которых есть задачи в очереди, в порядке обхода
+    private final Deque<SiteQueue> ring = new ArrayDeque<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final int threads;
+    private final int defaultMaxPerSite;
+    private volatile boolean running = true;
+
+    public CrawlExecutor(CrawlerProperties crawlerProperties) {
+        CrawlerProperties.Executor settings = crawlerProperties.getExecutor();
+        this.threads = settings.getThreads() > 0 ? settings.getThreads() : Runtime.getRuntime().availableProcessors();
+        this.defaultMaxPerSite = settings.getMaxThreadsPerSite() > 0 ? Math.min(settings.getMaxThreadsPerSite(), threads) : threads;
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::workLoop, "crawl-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        log.info("Общий пул обхода: {} потоков, не больше {} на сайт", threads, defaultMaxPerSite);
+    }
+
+    // Вес и предел одновременных задач сайта; 0 — значения по умолчанию
+    public void configureSite(String siteKey, int weight, int maxConcurrent) {
+        lock.lock();
+        try {
+            SiteQueue site = sites.computeIfAbsent(siteKey, SiteQueue::new);
+            site.weight = Math.max(1, weight);
+            site.credits = site.weight;
+            site.maxConcurrent = maxConcurrent > 0 ? Math.min(maxConcurrent, threads) : defaultMaxPerSite;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void execute(String siteKey, Runnable task) {
+        lock.lock();
+        try {
+            SiteQueue site = sites.computeIfAbsent(siteKey, SiteQueue::new);
+            site.tasks.addLast(task);
+            if (!site.inRing) {
+                site.inRing = true;
+                ring.addLast(site);
+            }
+            taskAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Executor, отправляющий задачи в очередь указанного сайта — для цепочек CompletableFuture
+    public Executor forSite(String siteKey) {
+        return task -> execute(siteKey, task);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getQueuedTasks(String siteKey) {
+        lock.lock();
+        try {
+            SiteQueue site = sites.get(siteKey);
+            return site == null ? 0 : site.tasks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getRunningTasks(String siteKey) {
+        lock.lock();
+        try {
+            SiteQueue site = sites.get(siteKey);
+            return site == null ? 0 : site.running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+
+    private void workLoop() {
+        while (running) {
+            SiteQueue site;
+            Runnable task;
+            lock.lock();
+            try {
+                while ((site = nextEligibleSite()) == null) {
+                    taskAvailable.await();
+                }
+                task = site.tasks.pollFirst();
+                site.running++;
+                // Вес исчерпан или задач больше нет — очередь переходит к следующему сайту
+                if (--site.credits <= 0 || site.tasks.isEmpty()) {
+                    site.credits = site.weight;
+                    ring.pollFirst();
+                    if (site.tasks.isEmpty()) {
+                        site.inRing = false;
+                    } else {
+                        ring.addLast(site);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                task.run();
+            } catch (Throwable e) {
+                log.error("Ошибка в задаче обхода сайта {}: {}", site.key, e.getMessage(), e);
+            } finally {
+                lock.lock();
+                try {
+                    site.running--;
+                    // Освободился слот сайта: его задачи снова могут достаться ждущему потоку
+                    taskAvailable.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    // Первый сайт в круге, у которого есть задачи и не исчерпан предел; вызывается под блокировкой
+    private SiteQueue nextEligibleSite() {
+        for (int i = ring.size(); i > 0; i--) {
+            SiteQueue site = ring.peekFirst();
+            if (site.tasks.isEmpty()) {
+                ring.pollFirst();
+                site.inRing = false;
+            } else if (site.running >= site.maxConcurrent) {
+                ring.addLast(ring.pollFirst());
+            } else {
+                return site;
+            }
+        }
+        return null;
+    }
+
+    private final class SiteQueue {
+
+        private final String key;
+        private final Deque<Runnable> tasks = new ArrayDeque<>();
+        private int weight = 1;
+        private int credits = 1;
+        private int maxConcurrent = defaultMaxPerSite;
+        private int running;
+        private boolean inRing;
+
+        private SiteQueue(String key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package searchengine.processors;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Метрики обхода в Micrometer с тегом {@code site}; через Actuator доступны на {@code /actuator/prometheus}.
+ * Частота загрузок считается в Prometheus как {@code rate(crawler_pages_fetched_total[1m])}.
+ */
+@Component
+public class CrawlMetrics {
+
+    private final MeterRegistry registry;
+    private final CrawlExecutor crawlExecutor;
+    private final HostPolitenessScheduler politenessScheduler;
+    // Очереди идущих обходов; датчик размера очереди читает их по адресу сайта
+    private final Map<String, UrlFrontier> frontiers = new ConcurrentHashMap<>();
+
+    public CrawlMetrics(MeterRegistry registry, CrawlExecutor crawlExecutor, HostPolitenessScheduler politenessScheduler) {
+        this.registry = registry;
+        this.crawlExecutor = crawlExecutor;
+        this.politenessScheduler = politenessScheduler;
+    }
+
+    // Датчики очереди обхода, очереди задач сайта в общем пуле и подстройки под хост; повторная регистрация возвращает те же датчики
+    public void registerSite(String site, UrlFrontier frontier) {
+        frontiers.put(site, frontier);
+        Gauge.builder("crawler.frontier.size", frontiers, active -> {
+                    UrlFrontier current = active.get(site);
+                    return current == null ? 0 : current.size();
+                })
+                .description("Адреса в очереди обхода сайта")
+                .tag("site", site)
+                .register(registry);
+        Gauge.builder("crawler.executor.queued", crawlExecutor, executor -> executor.getQueuedTasks(site))
+                .description("Задачи сайта, ожидающие поток общего пула")
+                .tag("site", site)
+                .register(registry);
+        String host = URI.create(site).getHost();
+        Gauge.builder("crawler.host.delay", politenessScheduler, scheduler -> scheduler.getDelayMillis(host))
+                .description("Текущий интервал между запросами к хосту")
+                .baseUnit("milliseconds")
+                .tag("site", site)
+                .register(registry);
+        Gauge.builder("crawler.host.concurrency", politenessScheduler, scheduler -> scheduler.getConcurrencyLimit(host))
+                .description("Текущий предел одновременных запросов к хосту")
+                .tag("site", site)
+                .register(registry);
+    }
+
+    public void unregisterSite(String site) {
+        frontiers.remove(site);
+    }
+
+    // Ответ сервера или ошибка загрузки: число страниц, задержка, байты по сети и ошибки по коду ответа
+    public void recordFetch(String site, FetchResult result, Throwable error, long latencyNanos) {
+        Timer.builder("crawler.fetch.latency")
+                .description("Время от отправки запроса до получения тела страницы")
+                .tag("site", site)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(latencyNanos, TimeUnit.NANOSECONDS);
+        Counter.builder("crawler.pages.fetched").tag("site", site).register(registry).increment();
+
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            Throwable root = cause.getCause() != null ? cause.getCause() : cause;
+            countError(site, root.getClass().getSimpleName());
+            return;
+        }
+        Counter.builder("crawler.bytes.downloaded")
+                .baseUnit("bytes")
+                .tag("site", site)
+                .register(registry)
+                .increment(result.getWireBytes());
+        if (result.getStatusCode() >= 400) {
+            countError(site, String.valueOf(result.getStatusCode()));
+        }
+    }
+
+    // Повторная попытка загрузки после временного сбоя
+    public void recordRetry(String site) {
+        Counter.builder("crawler.fetch.retries")
+                .description("Повторные попытки загрузки после временных сбоев")
+                .tag("site", site)
+                .register(registry)
+                .increment();
+    }
+
+    public void recordPolitenessWait(String site, long waitNanos) {
+        Timer.builder("crawler.politeness.wait")
+                .description("Ожидание слота планировщика вежливости перед запросом")
+                .tag("site", site)
+                .register(registry)
+                .record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Время обработки одной страницы на стадии конвейера: parse, lemmatize, persist
+    public Timer stageTimer(String site, String stage) {
+        return Timer.builder("crawler.stage.duration")
+                .description("Время обработки страницы на стадии конвейера")
+                .tag("site", site)
+                .tag("stage", stage)
+                .register(registry);
+    }
+
+    public void recordSiteCrawl(String site, long durationNanos) {
+        Timer.builder("crawler.site.duration")
+                .description("Продолжительность обхода сайта")
+                .tag("site", site)
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Удаление данных сайта перед полной переиндексацией
+    public void recordPurge(String site, long durationNanos) {
+        Timer.builder("crawler.site.purge")
+                .description("Продолжительность удаления старых данных сайта")
+                .tag("site", site)
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Время от запроса остановки до завершения обходов и число брошенных при этом страниц
+    public void recordStop(long latencyNanos, long abandonedPages) {
+        Timer.builder("crawler.stop.latency")
+                .description("Время остановки индексации")
+                .register(registry)
+                .record(latencyNanos, TimeUnit.NANOSECONDS);
+        Counter.builder("crawler.stop.abandoned")
+                .description("Страницы в работе, брошенные при остановке индексации")
+                .register(registry)
+                .increment(abandonedPages);
+    }
+
+    private void countError(String site, String status) {
+        Counter.builder("crawler.fetch.errors")
+                .description("Ответы с кодом 4xx/5xx и ошибки загрузки")
+                .tag("site", site)
+                .tag("status", status)
+                .register(registry)
+                .increment();
+    }
+}
@@ -0,0 +1,414 @@
+package searchengine.processors;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import searchengine.config.CrawlerProperties;
+import searchengine.dto.statistics.PipelineStageStatistics;
+import searchengine.model.PageModel;
+import searchengine.model.SiteModel;
+import searchengine.repository.PageValidators;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Конвейер обработки загруженных страниц одного сайта: разбор → лемматизация → сохранение.
+ * Стадии выполняются в общем {@link CrawlExecutor}, у каждой свой предел одновременных задач, поэтому медленная сеть
+ * не простаивает CPU-работу, а медленная база не останавливает загрузку, пока в конвейере есть место.
+ */
+@Slf4j
+public class CrawlPipeline {
+
+    private static final Set<String> BINARY_EXTENSIONS = Set.of(
+            "jpg", "jpeg", "png", "gif", "webp", "bmp", "svg", "ico", "tif", "tiff",
+            "pdf", "doc", "docx", "xls", "xlsx", "ppt", "pptx", "rtf", "odt",
+            "zip", "rar", "7z", "gz", "tgz", "tar", "bz2", "xz",
+            "mp3", "mp4", "avi", "mov", "mkv", "wmv", "flv", "webm", "ogg", "wav",
+            "exe", "msi", "dmg", "apk", "iso", "bin", "css", "js", "woff", "woff2", "ttf", "eot");
+
+    private final CrawlContext context;
+    private final SiteModel site;
+    private final int capacity;
+    private final CrawlErrorBudget errorBudget;
+    private final PipelineStage<CrawledPage> parseStage;
+    private final PipelineStage<CrawledPage> lemmatizeStage;
+    private final PipelineStage<CrawledPage> persistStage;
+
+    // Итоги повторного обхода: 304, тот же хэш, изменённые страницы
+    private final LongAdder notModifiedPages = new LongAdder();
+    private final LongAdder unchangedPages = new LongAdder();
+    private final LongAdder changedPages = new LongAdder();
+
+    // Сэкономленные канонизацией загрузки: иные написания известных адресов и страницы-копии по rel=canonical
+    private final VisitedUrlSet spellingVariants = new VisitedUrlSet(1024);
+    private final LongAdder collapsedSpellings = new LongAdder();
+    private final LongAdder canonicalRekeyed = new LongAdder();
+    private final LongAdder canonicalDuplicates = new LongAdder();
+
+    // Копии уже проиндексированных страниц: с тем же текстом и близкие по SimHash
+    private final LongAdder exactDuplicates = new LongAdder();
+    private final LongAdder nearDuplicates = new LongAdder();
+
+    public CrawlPipeline(CrawlContext context, CrawlExecutor executor, CrawlErrorBudget errorBudget) {
+        this.context = context;
+        this.site = context.getSite();
+        this.errorBudget = errorBudget;
+
+        CrawlerProperties.Pipeline settings = context.getCrawlerProperties().getPipeline();
+        this.capacity = Math.max(1, settings.getQueueCapacity());
+        String siteName = site.getName();
+        String siteKey = site.getUrl();
+        CrawlMetrics metrics = context.getCrawlMetrics();
+        this.parseStage = new PipelineStage<>("parse", siteName, settings.getParseWorkers(),
+                capacity, executor, siteKey, metrics.stageTimer(siteKey, "parse"), guarded(this::parse));
+        this.lemmatizeStage = new PipelineStage<>("lemmatize", siteName, settings.getLemmatizeWorkers(),
+                capacity, executor, siteKey, metrics.stageTimer(siteKey, "lemmatize"), guarded(this::lemmatize));
+        this.persistStage = new PipelineStage<>("persist", siteName, settings.getPersistWorkers(),
+                capacity, executor, siteKey, metrics.stageTimer(siteKey, "persist"), guarded(this::persist));
+    }
+
+    public void start() {
+        persistStage.start();
+        lemmatizeStage.start();
+        parseStage.start();
+    }
+
+    public void shutdown() {
+        parseStage.shutdown();
+        lemmatizeStage.shutdown();
+        persistStage.shutdown();
+    }
+
+    // Сколько загруженных, но не сохранённых страниц сайта может находиться в конвейере одновременно
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void submit(CrawledPage page) {
+        parseStage.submit(page);
+    }
+
+    public CrawlErrorBudget getErrorBudget() {
+        return errorBudget;
+    }
+
+    public List<PipelineStageStatistics> getStatistics() {
+        return List.of(parseStage.getStatistics(), lemmatizeStage.getStatistics(), persistStage.getStatistics());
+    }
+
+    public long getNotModifiedPages() {
+        return notModifiedPages.sum();
+    }
+
+    public long getUnchangedPages() {
+        return unchangedPages.sum();
+    }
+
+    public long getChangedPages() {
+        return changedPages.sum();
+    }
+
+    public long getCollapsedSpellings() {
+        return collapsedSpellings.sum();
+    }
+
+    public long getCanonicalRekeyed() {
+        return canonicalRekeyed.sum();
+    }
+
+    public long getCanonicalDuplicates() {
+        return canonicalDuplicates.sum();
+    }
+
+    public long getExactDuplicates() {
+        return exactDuplicates.sum();
+    }
+
+    public long getNearDuplicates() {
+        return nearDuplicates.sum();
+    }
+
+    // Разбор HTML: новые ссылки уходят в очередь обхода, текст — на лемматизацию
+    private void parse(CrawledPage page) {
+        if (!page.isIndexable() || !context.getIsIndexingRunning().get()) {
+            persistStage.submit(page);
+            return;
+        }
+
+        String content = page.getFetchResult().getBody();
+        FrontierEntry entry = page.getEntry();
+        // Единственный разбор страницы; относительные ссылки разрешаются от адреса после редиректов с учётом <base href>
+        ParsedPage parsedPage = HtmlPageParser.parse(content, page.getFetchResult().getFinalUrl());
+        page.setParsedPage(parsedPage);
+
+        PageValidators knownPage = page.getKnownPage();
+        if (knownPage == null && context.getCrawlerProperties().getCanonicalization().isFollowCanonicalLink()) {
+            applyCanonicalPath(page, parsedPage);
+            if (page.isCanonicalDuplicate()) {
+                persistStage.submit(page);
+                return;
+            }
+        }
+
+        // Новые ссылки проверяем по общему множеству посещённых адресов, без запросов к базе;
+        // ссылки нужны и у неизменившихся страниц — при возобновлении обхода они могли не попасть в очередь
+        int nextDepth = entry.getDepth() + 1;
+        if (nextDepth < context.getCrawlerProperties().getMaxDepth()) {
+            offerLinks(parsedPage, nextDepth);
+        }
+
+        // Содержимое не изменилось с прошлого обхода — лемматизация и перезапись индекса не нужны
+        page.setContentHash(ContentFingerprint.sha256(content));
+        if (knownPage != null && page.getContentHash().equals(knownPage.getContentHash())) {
+            page.setUnchanged(true);
+            persistStage.submit(page);
+            return;
+        }
+
+        // Та же статья под другим адресом (версия для печати, AMP, параметры) сохраняется без лемм
+        if (isDuplicate(page, parsedPage)) {
+            persistStage.submit(page);
+            return;
+        }
+
+        lemmatizeStage.submit(page);
+    }
+
+    private boolean isDuplicate(CrawledPage page, ParsedPage parsedPage) {
+        CrawlerProperties.Dedup settings = context.getCrawlerProperties().getDedup();
+        String[] words = ContentFingerprint.words(parsedPage.getText());
+        page.setSimHash(ContentFingerprint.simHash(words));
+        if (!settings.isEnabled() || words.length < settings.getMinWords()) {
+            return false;
+        }
+
+        DuplicateIndex.Match match = context.getDuplicateIndex()
+                .findOrAdd(page.getPath(), ContentFingerprint.textHash(words), page.getSimHash());
+        if (match == null) {
+            return false;
+        }
+        page.setDuplicateOf(match.getPath());
+        if (match.isExact()) {
+            exactDuplicates.increment();
+        } else {
+            nearDuplicates.increment();
+        }
+        log.debug("Страница {} — копия {} (расстояние {})", page.getPath(), match.getPath(), match.getDistance());
+        return true;
+    }
+
+    private void lemmatize(CrawledPage page) {
+        if (context.getIsIndexingRunning().get()) {
+            page.setLemmas(context.getTextAnalyzer().analyseText(page.getParsedPage().getIndexableText()));
+        }
+        persistStage.submit(page);
+    }
+
+    // Сохранение страницы, лемм и индекса; исход страницы учитывается в бюджете ошибок сайта
+    private void persist(CrawledPage page) throws InterruptedException {
+        try {
+            // После остановки страница не сохраняется, а прерванная загрузка — не ошибка сайта
+            if (!context.getIsIndexingRunning().get()) {
+                return;
+            }
+            String error = save(page);
+            if (error == null) {
+                errorBudget.recordSuccess();
+            } else {
+                recordError(error);
+            }
+        } finally {
+            page.complete();
+        }
+    }
+
+    // Возвращает ошибку страницы: загрузка не удалась после всех повторов или сервер ответил 5xx; null — успех
+    private String save(CrawledPage page) throws InterruptedException {
+        if (page.getFetchError() != null) {
+            Throwable cause = page.getFetchError() instanceof CompletionException && page.getFetchError().getCause() != null
+                    ? page.getFetchError().getCause() : page.getFetchError();
+            log.error("Ошибка при загрузке страницы {}: {}", page.getEntry().getUrl(), cause.getMessage());
+            return cause.getMessage();
+        }
+        if (page.isCanonicalDuplicate()) {
+            return null;
+        }
+        if (page.getKnownPage() != null) {
+            persistKnownPage(page);
+            return serverError(page);
+        }
+
+        PageModel pageModel = new PageModel();
+        pageModel.setSiteModel(site);
+        pageModel.setPath(page.getPath());
+        applyFetchResult(pageModel, page);
+
+        // Новая страница с леммами уходит в буфер и записывается пакетом вместе с другими
+        if (context.getCrawlerProperties().getWriteBuffer().isEnabled()) {
+            context.getPageWriteBuffer().submit(pageModel, page.getLemmas());
+            return serverError(page);
+        }
+        try {
+            context.getPageRepository().save(pageModel);
+            updateSiteStatusTime(site);
+
+            // Страницы с ошибкой сохраняем с кодом ответа, но не индексируем
+            if (page.getLemmas() != null) {
+                context.getLemmaService().saveLemmas(pageModel, page.getLemmas());
+            }
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Страница {} уже существует в базе данных", page.getEntry().getUrl());
+        }
+        return serverError(page);
+    }
+
+    private static String serverError(CrawledPage page) {
+        int statusCode = page.getFetchResult().getStatusCode();
+        return statusCode >= 500 ? "Сервер ответил " + statusCode + " на запрос " + page.getEntry().getUrl() : null;
+    }
+
+    // Страница уже есть в базе: при 304 и совпадении хэша обновляем только валидаторы
+    private void persistKnownPage(CrawledPage page) {
+        PageValidators knownPage = page.getKnownPage();
+        FetchResult fetchResult = page.getFetchResult();
+
+        if (page.isNotModified() || page.isUnchanged()) {
+            if (page.isNotModified()) {
+                notModifiedPages.increment();
+            } else {
+                unchangedPages.increment();
+            }
+            String etag = Optional.ofNullable(fetchResult.getEtag()).orElse(knownPage.getEtag());
+            String lastModified = Optional.ofNullable(fetchResult.getLastModified()).orElse(knownPage.getLastModified());
+            String contentHash = Optional.ofNullable(page.getContentHash()).orElse(knownPage.getContentHash());
+            if (!Objects.equals(etag, knownPage.getEtag()) || !Objects.equals(lastModified, knownPage.getLastModified())
+                    || !Objects.equals(contentHash, knownPage.getContentHash())) {
+                context.getPageRepository().updateValidators(knownPage.getId(), etag, lastModified, contentHash);
+            }
+            return;
+        }
+
+        // Страница изменилась: убираем старые леммы и индекс, перезаписываем содержимое
+        changedPages.increment();
+        PageModel pageModel = context.getPageRepository().findById(knownPage.getId()).orElseGet(() -> {
+            PageModel newPage = new PageModel();
+            newPage.setSiteModel(site);
+            newPage.setPath(page.getEntry().getPath());
+            return newPage;
+        });
+        if (pageModel.getId() != null) {
+            context.getLemmaService().removeLemmasAndIndexesForPage(pageModel);
+        }
+        applyFetchResult(pageModel, page);
+        context.getPageRepository().save(pageModel);
+        updateSiteStatusTime(site);
+
+        if (page.getLemmas() != null) {
+            context.getLemmaService().saveLemmas(pageModel, page.getLemmas());
+        }
+    }
+
+    private void applyFetchResult(PageModel pageModel, CrawledPage page) {
+        FetchResult fetchResult = page.getFetchResult();
+        pageModel.setContent(fetchResult.getBody());
+        pageModel.setCode(fetchResult.getStatusCode());
+        pageModel.setEtag(fetchResult.getEtag());
+        pageModel.setLastModified(fetchResult.getLastModified());
+        pageModel.setContentHash(page.getContentHash());
+        pageModel.setSimhash(page.getSimHash());
+        pageModel.setDuplicateOf(page.getDuplicateOf());
+        ParsedPage parsedPage = page.getParsedPage();
+        if (parsedPage != null) {
+            pageModel.setTitle(truncate(parsedPage.getTitle(), 1024));
+            // Текст копии в поиске не участвует: он уже сохранён у оригинала
+            pageModel.setHeadings(page.getDuplicateOf() == null ? parsedPage.getHeadings() : null);
+            pageModel.setPlainText(page.getDuplicateOf() == null ? parsedPage.getText() : null);
+        }
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+
+    // Ошибка на любой стадии не должна терять страницу: учитываем её в бюджете ошибок и завершаем страницу
+    private Consumer<CrawledPage> guarded(StageHandler handler) {
+        return page -> {
+            try {
+                handler.handle(page);
+            } catch (Exception e) {
+                log.error("Ошибка при обработке страницы {}: {}", page.getEntry().getUrl(), e.getMessage());
+                if (context.getIsIndexingRunning().get()) {
+                    recordError(e.getMessage());
+                }
+                page.complete();
+            }
+        };
+    }
+
+    // Сайт остаётся в индексации: FAILED его отметит только превышение бюджета ошибок, последняя ошибка видна сразу
+    private void recordError(String error) {
+        errorBudget.recordError(error);
+        site.setLastError(error);
+        updateSiteStatusTime(site);
+    }
+
+    @FunctionalInterface
+    private interface StageHandler {
+        void handle(CrawledPage page) throws Exception;
+    }
+
+    // Изображения, документы, архивы и медиа по расширению не ставим в очередь вовсе
+    private boolean isBinaryResourceUrl(String path) {
+        int queryStart = path.indexOf('?');
+        String lowerPath = (queryStart >= 0 ? path.substring(0, queryStart) : path).toLowerCase();
+        int dot = lowerPath.lastIndexOf('.');
+        return dot > lowerPath.lastIndexOf('/') && BINARY_EXTENSIONS.contains(lowerPath.substring(dot + 1));
+    }
+
+    private void updateSiteStatusTime(SiteModel site) {
+        site.setStatusTime(LocalDateTime.now());
+        context.getSiteRepository().save(site);
+    }
+
+    private void offerLinks(ParsedPage parsedPage, int depth) {
+        UrlCanonicalizer canonicalizer = context.getUrlCanonicalizer();
+        for (String absoluteUrl : parsedPage.getLinks()) {
+            String url = canonicalizer.canonicalize(absoluteUrl);
+            if (url == null) {
+                continue;
+            }
+            String path = canonicalizer.toPath(url, site.getUrl());
+            if (path == null || isBinaryResourceUrl(path)) {
+                continue;
+            }
+            // Другое написание уже известного адреса: без канонизации это была бы лишняя загрузка
+            if (!context.getFrontier().offer(path, url, depth) && !absoluteUrl.equals(url)
+                    && spellingVariants.add(VisitedUrlSet.fingerprint(absoluteUrl))) {
+                collapsedSpellings.increment();
+            }
+        }
+    }
+
+    // Редирект или <link rel="canonical"> указывают настоящий адрес страницы: сохраняем её под ним
+    private void applyCanonicalPath(CrawledPage page, ParsedPage parsedPage) {
+        String targetUrl = parsedPage.getCanonicalUrl() != null ? parsedPage.getCanonicalUrl() : page.getFetchResult().getFinalUrl();
+        String targetPath = context.getUrlCanonicalizer().toPath(targetUrl, site.getUrl());
+        if (targetPath == null || targetPath.equals(page.getPath())) {
+            return;
+        }
+        if (context.getFrontier().markVisited(targetPath)) {
+            // Канонический адрес ещё не встречался: отдельно загружать его уже не придётся
+            page.setPath(targetPath);
+            canonicalRekeyed.increment();
+        } else {
+            page.setCanonicalDuplicate(true);
+            canonicalDuplicates.increment();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package searchengine.processors;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerProperties;
+import searchengine.config.CrawlerSettings;
+import searchengine.model.SiteModel;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Начальное наполнение очереди обхода: правила robots.txt и адреса из sitemap.
+ * Sitemap читаются из robots.txt, а если там их нет — из {@code /sitemap.xml}; индексы sitemap
+ * раскрываются рекурсивно, сжатые gzip файлы распаковываются. Адреса ставятся в очередь
+ * от недавно изменённых к старым, чтобы свежие страницы загружались первыми.
+ */
+@Component
+@Slf4j
+public class CrawlSeeder {
+
+    // Предел размера распакованного sitemap по протоколу sitemaps.org
+    private static final int MAX_SITEMAP_BYTES = 50 * 1024 * 1024;
+
+    private static final Comparator<SitemapUrl> FRESH_FIRST = Comparator
+            .comparing(SitemapUrl::getLastModified, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(SitemapUrl::getPriority, Comparator.nullsLast(Comparator.reverseOrder()));
+
+    private final PageFetcher pageFetcher;
+    private final HostPolitenessScheduler politenessScheduler;
+    private final CrawlerSettings crawlerSettings;
+    private final CrawlerProperties crawlerProperties;
+    private final UrlCanonicalizer urlCanonicalizer;
+
+    public CrawlSeeder(PageFetcher pageFetcher, HostPolitenessScheduler politenessScheduler,
+                       CrawlerSettings crawlerSettings, CrawlerProperties crawlerProperties, UrlCanonicalizer urlCanonicalizer) {
+        this.pageFetcher = pageFetcher;
+        this.politenessScheduler = politenessScheduler;
+        this.crawlerSettings = crawlerSettings;
+        this.crawlerProperties = crawlerProperties;
+        this.urlCanonicalizer = urlCanonicalizer;
+    }
+
+    // Загружает robots.txt сайта; Crawl-delay сразу применяется к планировщику вежливости
+    public RobotsRules loadRobotsRules(String siteUrl) {
+        if (!crawlerProperties.isRespectRobotsTxt()) {
+            return RobotsRules.allowAll();
+        }
+        String robotsUrl = resolve(siteUrl, "/robots.txt");
+        try {
+            HttpResponse<byte[]> response = fetch(robotsUrl);
+            if (response.statusCode() / 100 != 2) {
+                log.info("robots.txt для {} не найден (код {}), ограничений нет", siteUrl, response.statusCode());
+                return RobotsRules.allowAll();
+            }
+            RobotsRules rules = RobotsRules.parse(new String(response.body(), StandardCharsets.UTF_8), crawlerSettings.getUserAgent());
+            if (rules.getCrawlDelayMillis() != null) {
+                politenessScheduler.setCrawlDelay(URI.create(siteUrl).getHost(), rules.getCrawlDelayMillis());
+                log.info("robots.txt {}: Crawl-delay {} мс", siteUrl, rules.getCrawlDelayMillis());
+            }
+            return rules;
+        } catch (Exception e) {
+            log.warn("Не удалось загрузить robots.txt {}: {}", robotsUrl, e.getMessage());
+            return RobotsRules.allowAll();
+        }
+    }
+
+    // Ставит в очередь адреса сайта из sitemap, разрешённые robots.txt; возвращает число новых адресов.
+    // Чтение sitemap прекращается, как только индексацию остановили
+    public int seedFromSitemaps(SiteModel site, RobotsRules robotsRules, UrlFrontier frontier, AtomicBoolean isIndexingRunning) {
+        CrawlerProperties.Sitemap settings = crawlerProperties.getSitemap();
+        if (!settings.isEnabled()) {
+            return 0;
+        }
+
+        List<SitemapUrl> urls = readSitemaps(site.getUrl(), robotsRules, settings, isIndexingRunning);
+        urls.sort(FRESH_FIRST);
+
+        int seeded = 0;
+        for (SitemapUrl sitemapUrl : urls) {
+            String url = urlCanonicalizer.canonicalize(sitemapUrl.getUrl());
+            String relativePath = urlCanonicalizer.toPath(url, site.getUrl());
+            if (relativePath != null && robotsRules.isAllowed(url)
+                    && frontier.offer(relativePath, url, 0, sitemapUrl.getPriority(), sitemapUrl.getLastModified())) {
+                seeded++;
+            }
+        }
+        log.info("Sitemap {}: найдено {} адресов, поставлено в очередь {}", site.getUrl(), urls.size(), seeded);
+        return seeded;
+    }
+
+    private List<SitemapUrl> readSitemaps(String siteUrl, RobotsRules robotsRules, CrawlerProperties.Sitemap settings,
+                                          AtomicBoolean isIndexingRunning) {
+        Deque<String> pending = new ArrayDeque<>(robotsRules.getSitemaps());
+        if (pending.isEmpty()) {
+            pending.add(resolve(siteUrl, "/sitemap.xml"));
+        }
+
+        String siteHost = URI.create(siteUrl).getHost();
+        Set<String> seenSitemaps = new HashSet<>();
+        List<SitemapUrl> urls = new ArrayList<>();
+        while (isIndexingRunning.get() && !pending.isEmpty() && seenSitemaps.size() < settings.getMaxFiles() && urls.size() < settings.getMaxUrls()) {
+            String sitemapUrl = pending.poll();
+            if (!seenSitemaps.add(sitemapUrl)) {
+                continue;
+            }
+            Document document = loadSitemap(sitemapUrl);
+            if (document == null) {
+                continue;
+            }
+
+            // Индекс sitemap: вложенные файлы обрабатываем в той же очереди
+            for (Element loc : document.select("sitemapindex > sitemap > loc")) {
+                pending.add(loc.text().trim());
+            }
+            for (Element entry : document.select("urlset > url")) {
+                String loc = childText(entry, "loc");
+                if (loc.isEmpty() || !isSameHost(loc, siteHost)) {
+                    continue;
+                }
+                urls.add(new SitemapUrl(loc, parseLastModified(childText(entry, "lastmod")),
+                        parsePriority(childText(entry, "priority"))));
+                if (urls.size() >= settings.getMaxUrls()) {
+                    break;
+                }
+            }
+        }
+        return urls;
+    }
+
+    private Document loadSitemap(String sitemapUrl) {
+        try {
+            HttpResponse<byte[]> response = fetch(sitemapUrl);
+            if (response.statusCode() / 100 != 2) {
+                log.info("Sitemap {} недоступен (код {})", sitemapUrl, response.statusCode());
+                return null;
+            }
+            byte[] body = decompress(response.body());
+            return Jsoup.parse(new String(body, StandardCharsets.UTF_8), sitemapUrl, Parser.xmlParser());
+        } catch (Exception e) {
+            log.warn("Не удалось прочитать sitemap {}: {}", sitemapUrl, e.getMessage());
+            return null;
+        }
+    }
+
+    private HttpResponse<byte[]> fetch(String url) {
+        politenessScheduler.acquire(URI.create(url).getHost()).join();
+        return pageFetcher.fetchBytes(url);
+    }
+
+    // sitemap.xml.gz, а также ответ с Content-Encoding: gzip, который клиент не распаковывает сам
+    private static byte[] decompress(byte[] body) throws IOException {
+        if (body.length < 2 || (body[0] & 0xff) != 0x1f || (body[1] & 0xff) != 0x8b) {
+            return body;
+        }
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return in.readNBytes(MAX_SITEMAP_BYTES);
+        }
+    }
+
+    private static String childText(Element element, String tag) {
+        Element child = element.getElementsByTag(tag).first();
+        return child == null ? "" : child.text().trim();
+    }
+
+    private static boolean isSameHost(String url, String host) {
+        try {
+            return host.equalsIgnoreCase(URI.create(url).getHost());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static Instant parseLastModified(String value) {
+        if (value.isEmpty()) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(value).toInstant();
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDate.parse(value.length() > 10 ? value.substring(0, 10) : value).atStartOfDay().toInstant(ZoneOffset.UTC);
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+
+    private static Double parsePriority(String value) {
+        try {
+            return value.isEmpty() ? null : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String resolve(String siteUrl, String path) {
+        return URI.create(siteUrl).resolve(path).toString();
+    }
+}
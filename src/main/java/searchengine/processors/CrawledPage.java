@@ -0,0 +1,64 @@
+package searchengine.processors;
+
+import lombok.Getter;
+import lombok.Setter;
+import searchengine.repository.PageValidators;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Страница, проходящая стадии конвейера обхода: загрузка → разбор → лемматизация → сохранение.
+ * Каждая стадия дописывает свой результат, последняя вызывает {@link #complete()}.
+ */
+@Getter
+@Setter
+public class CrawledPage {
+
+    private final FrontierEntry entry;
+    // Сохранённая при прошлом обходе версия страницы, null для новых страниц
+    private final PageValidators knownPage;
+    private final FetchResult fetchResult;
+    private final Throwable fetchError;
+    private final Runnable onComplete;
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    // Ключ, под которым страница будет сохранена: адрес из очереди, после редиректа или из rel=canonical
+    private String path;
+    // Страница — копия уже обойдённого канонического адреса: ссылки взяты, сохранять не нужно
+    private boolean canonicalDuplicate;
+    private String contentHash;
+    // Содержимое совпало с сохранённым — леммы и индекс не переписываем
+    private boolean unchanged;
+    private ParsedPage parsedPage;
+    private Long simHash;
+    // Путь проиндексированной страницы с тем же текстом: копия сохраняется со ссылкой на неё, без лемм
+    private String duplicateOf;
+    private Map<String, Integer> lemmas;
+
+    public CrawledPage(FrontierEntry entry, PageValidators knownPage, FetchResult fetchResult, Throwable fetchError, Runnable onComplete) {
+        this.entry = entry;
+        this.knownPage = knownPage;
+        this.fetchResult = fetchResult;
+        this.fetchError = fetchError;
+        this.onComplete = onComplete;
+        this.path = entry.getPath();
+    }
+
+    public boolean isNotModified() {
+        return fetchError == null && fetchResult != null && fetchResult.isNotModified();
+    }
+
+    // Страницу можно разбирать и индексировать: ответ получен, код 2xx, содержимое HTML
+    public boolean isIndexable() {
+        return fetchError == null && fetchResult != null && fetchResult.isSuccessful() && fetchResult.isHtml()
+                && !fetchResult.isSkipped();
+    }
+
+    // Повторный вызов ничего не делает: страница завершается ровно один раз
+    public void complete() {
+        if (completed.compareAndSet(false, true)) {
+            onComplete.run();
+        }
+    }
+}
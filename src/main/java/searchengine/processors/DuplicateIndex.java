@@ -0,0 +1,103 @@
+package searchengine.processors;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Отпечатки проиндексированных страниц одного сайта: точный хэш нормализованного текста и SimHash.
+ * Поиск близких отпечатков использует принцип Дирихле: 64 бита делятся на {@code maxDistance + 1}
+ * блоков, и отпечатки на расстоянии не больше {@code maxDistance} совпадают хотя бы в одном блоке.
+ * Поэтому сравниваются только страницы из общих корзин, а не все страницы сайта.
+ */
+public class DuplicateIndex {
+
+    private final int maxDistance;
+    private final int blocks;
+    private final Map<String, String> exactTexts = new HashMap<>();
+    private final List<Map<Long, List<Fingerprint>>> buckets = new ArrayList<>();
+
+    public DuplicateIndex(int maxDistance) {
+        this.maxDistance = Math.max(0, Math.min(maxDistance, 15));
+        this.blocks = this.maxDistance + 1;
+        for (int i = 0; i < blocks; i++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Путь уже проиндексированной страницы, копией которой является данная, или null —
+     * тогда страница запоминается как оригинал. Проверка и добавление атомарны: из двух копий,
+     * разбираемых одновременно, оригиналом станет ровно одна.
+     */
+    public synchronized Match findOrAdd(String path, String textHash, long simHash) {
+        String exactPath = textHash == null ? null : exactTexts.get(textHash);
+        if (exactPath != null && !exactPath.equals(path)) {
+            return new Match(exactPath, 0, true);
+        }
+
+        Fingerprint nearest = null;
+        int nearestDistance = Integer.MAX_VALUE;
+        for (int block = 0; block < blocks; block++) {
+            for (Fingerprint candidate : buckets.get(block).getOrDefault(blockKey(simHash, block), List.of())) {
+                int distance = ContentFingerprint.hammingDistance(simHash, candidate.simHash);
+                if (distance <= maxDistance && distance < nearestDistance && !candidate.path.equals(path)) {
+                    nearest = candidate;
+                    nearestDistance = distance;
+                }
+            }
+        }
+        if (nearest != null) {
+            return new Match(nearest.path, nearestDistance, false);
+        }
+
+        add(path, textHash, simHash);
+        return null;
+    }
+
+    // Отпечаток страницы, сохранённой прошлым обходом
+    public synchronized void add(String path, String textHash, long simHash) {
+        if (textHash != null) {
+            exactTexts.putIfAbsent(textHash, path);
+        }
+        Fingerprint fingerprint = new Fingerprint(path, simHash);
+        for (int block = 0; block < blocks; block++) {
+            buckets.get(block).computeIfAbsent(blockKey(simHash, block), key -> new ArrayList<>()).add(fingerprint);
+        }
+    }
+
+    // Биты отпечатка делятся между блоками поровну, блоки не перекрываются
+    private long blockKey(long simHash, int block) {
+        int from = block * 64 / blocks;
+        int width = (block + 1) * 64 / blocks - from;
+        long mask = width == 64 ? -1L : (1L << width) - 1;
+        return simHash >>> from & mask;
+    }
+
+    private static final class Fingerprint {
+        private final String path;
+        private final long simHash;
+
+        private Fingerprint(String path, long simHash) {
+            this.path = path;
+            this.simHash = simHash;
+        }
+    }
+
+    // Найденный оригинал: путь страницы, расстояние Хэмминга и совпал ли текст целиком
+    @Getter
+    public static final class Match {
+        private final String path;
+        private final int distance;
+        private final boolean exact;
+
+        private Match(String path, int distance, boolean exact) {
+            this.path = path;
+            this.distance = distance;
+            this.exact = exact;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package searchengine.processors;
+
+import lombok.Getter;
+
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * Результат одного HTTP-обмена со страницей: код ответа, итоговый адрес после редиректов,
+ * тип содержимого, заголовки и тело. Код и тело всегда относятся к одному и тому же ответу.
+ */
+@Getter
+public class FetchResult {
+
+    private final String requestedUrl;
+    private final String finalUrl;
+    private final int statusCode;
+    private final String contentType;
+    private final HttpHeaders headers;
+    private final String body;
+    // Чтение тела прервано (не HTML или слишком большой ответ), null — тело получено полностью
+    private final PageBody.SkipReason skipReason;
+    // Объём тела по сети и после распаковки
+    private final long wireBytes;
+    private final long decodedBytes;
+
+    public FetchResult(String requestedUrl, String finalUrl, int statusCode, String contentType, HttpHeaders headers,
+                       String body, PageBody.SkipReason skipReason, long wireBytes, long decodedBytes) {
+        this.requestedUrl = requestedUrl;
+        this.finalUrl = finalUrl;
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.headers = headers;
+        this.body = body;
+        this.skipReason = skipReason;
+        this.wireBytes = wireBytes;
+        this.decodedBytes = decodedBytes;
+    }
+
+    public static FetchResult of(String requestedUrl, HttpResponse<PageBody> response) {
+        HttpHeaders headers = response.headers();
+        PageBody pageBody = response.body();
+        return new FetchResult(
+                requestedUrl,
+                response.uri().toString(),
+                response.statusCode(),
+                headers.firstValue("Content-Type").orElse(""),
+                headers,
+                pageBody == null ? "" : pageBody.getText(),
+                pageBody == null ? null : pageBody.getSkipReason(),
+                pageBody == null ? 0 : pageBody.getWireBytes(),
+                pageBody == null ? 0 : pageBody.getDecodedBytes()
+        );
+    }
+
+    public boolean isSkipped() {
+        return skipReason != null;
+    }
+
+    // Коды 2xx — страница получена, её можно индексировать
+    public boolean isSuccessful() {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+    // 304: страница не изменилась с момента, указанного валидаторами запроса
+    public boolean isNotModified() {
+        return statusCode == 304;
+    }
+
+    public String getEtag() {
+        return headers.firstValue("ETag").orElse(null);
+    }
+
+    public String getLastModified() {
+        return headers.firstValue("Last-Modified").orElse(null);
+    }
+
+    // 429 и 503: сервер перегружен или ограничивает частоту запросов
+    public boolean isOverloaded() {
+        return statusCode == 429 || statusCode == 503;
+    }
+
+    // Retry-After в секундах или датой HTTP; null — заголовка нет или он не разобран
+    public Duration getRetryAfter() {
+        String value = headers.firstValue("Retry-After").map(String::trim).orElse(null);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            try {
+                Instant until = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                Duration wait = Duration.between(Instant.now(), until);
+                return wait.isNegative() ? Duration.ZERO : wait;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+
+    public boolean isHtml() {
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.isEmpty() || type.contains("text/html") || type.contains("application/xhtml");
+    }
+}
@@ -0,0 +1,18 @@
+package searchengine.processors;
+
+import lombok.Getter;
+
+// Адрес из очереди обхода: относительный путь страницы, полный URL и глубина, на которой он найден
+@Getter
+public class FrontierEntry {
+
+    private final String path;
+    private final String url;
+    private final int depth;
+
+    public FrontierEntry(String path, String url, int depth) {
+        this.path = path;
+        this.url = url;
+        this.depth = depth;
+    }
+}
@@ -0,0 +1,84 @@
+package searchengine.processors;
+
+import searchengine.config.CrawlerProperties;
+
+/**
+ * Автомат защиты хоста. В замкнутом состоянии помнит исходы последних {@code window-size} запросов;
+ * когда доля ошибок достигает порога, размыкается, и запросы к хосту приостанавливаются на {@code open-duration}.
+ * После паузы к хосту уходит один пробный запрос: удачный замыкает автомат, неудачный снова размыкает его.
+ */
+public class HostCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final boolean[] window;
+    private final int minimumRequests;
+    private final double failureRateThreshold;
+    private final long openDurationNanos;
+
+    private State state = State.CLOSED;
+    private int position;
+    private int recorded;
+    private int failures;
+    private long openUntil;
+
+    public HostCircuitBreaker(CrawlerProperties.CircuitBreaker settings) {
+        this.window = new boolean[Math.max(1, settings.getWindowSize())];
+        this.minimumRequests = Math.max(1, Math.min(settings.getMinimumRequests(), window.length));
+        this.failureRateThreshold = settings.getFailureRateThreshold();
+        this.openDurationNanos = Math.max(0, settings.getOpenDuration().toNanos());
+    }
+
+    /**
+     * Учитывает исход запроса. Возвращает паузу в наносекундах, если автомат только что разомкнулся, иначе 0.
+     * Ответы, пришедшие, пока автомат разомкнут, относятся к запросам, отправленным до паузы, и не учитываются.
+     */
+    public synchronized long onResult(boolean failed) {
+        State current = getState();
+        if (current == State.OPEN) {
+            return 0;
+        }
+        if (current == State.HALF_OPEN) {
+            if (failed) {
+                return open();
+            }
+            reset();
+            return 0;
+        }
+
+        if (recorded == window.length && window[position]) {
+            failures--;
+        }
+        window[position] = failed;
+        position = (position + 1) % window.length;
+        recorded = Math.min(recorded + 1, window.length);
+        if (failed) {
+            failures++;
+        }
+        if (recorded >= minimumRequests && failures >= failureRateThreshold * recorded) {
+            return open();
+        }
+        return 0;
+    }
+
+    // Разомкнутый автомат по истечении паузы становится полуоткрытым: следующий запрос — пробный
+    public synchronized State getState() {
+        if (state == State.OPEN && System.nanoTime() - openUntil >= 0) {
+            state = State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    private long open() {
+        state = State.OPEN;
+        openUntil = System.nanoTime() + openDurationNanos;
+        return Math.max(1, openDurationNanos);
+    }
+
+    private void reset() {
+        state = State.CLOSED;
+        position = 0;
+        recorded = 0;
+        failures = 0;
+    }
+}
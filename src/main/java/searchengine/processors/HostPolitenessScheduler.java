@@ -0,0 +1,257 @@
+package searchengine.processors;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerProperties;
+import searchengine.config.CrawlerSettings;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Планировщик вежливого обхода: для каждого хоста хранится время, раньше которого следующий
+ * запрос отправлять нельзя. Интервал между запросами и число одновременных запросов подстраиваются
+ * по ответам хоста ({@link AdaptiveHostLimit}) в границах {@code crawler-settings.delay-between-requests};
+ * при {@code crawler.politeness.adaptive: false} интервал берётся случайно из этих границ.
+ * Когда хост отвечает в основном ошибками, {@link HostCircuitBreaker} приостанавливает запросы к нему.
+ * Ожидание не занимает рабочие потоки: разрешение выдаётся как {@link CompletableFuture}, который завершает общий таймер.
+ */
+@Component
+@Slf4j
+public class HostPolitenessScheduler {
+
+    private static final long DEFAULT_MIN_DELAY_MS = 1200;
+    private static final long DEFAULT_MAX_DELAY_MS = 2000;
+
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+    // Разрешения, ожидающие своего слота; остановка индексации отменяет их, не дожидаясь таймера
+    private final Set<CompletableFuture<Void>> pendingPermits = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService timer;
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final int maxConcurrency;
+    private final CrawlerProperties.Politeness politeness;
+    private final CrawlerProperties.CircuitBreaker circuitBreaker;
+
+    public HostPolitenessScheduler(CrawlerSettings crawlerSettings, CrawlerProperties crawlerProperties) {
+        List<Integer> range = crawlerSettings.getDelayBetweenRequests();
+        long minDelay = range != null && !range.isEmpty() ? range.get(0) : DEFAULT_MIN_DELAY_MS;
+        long maxDelay = range != null && range.size() > 1 ? range.get(1) : Math.max(minDelay, DEFAULT_MAX_DELAY_MS);
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.min(minDelay, maxDelay));
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(minDelay, maxDelay));
+        this.maxConcurrency = Math.max(1, crawlerProperties.getMaxInFlightPerSite());
+        this.politeness = crawlerProperties.getPoliteness();
+        this.circuitBreaker = crawlerProperties.getCircuitBreaker();
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "politeness-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Интервал между запросами к одному хосту: {}–{} мс{}", minDelay, maxDelay,
+                politeness.isAdaptive() ? ", подстраивается по ответам сервера" : "");
+    }
+
+    /**
+     * Разрешение на запрос к хосту: завершается, когда наступит зарезервированный слот.
+     * Если пока разрешение ждало, хост попросил паузу (Retry-After, автомат защиты), ожидание продлевается до её конца.
+     */
+    public CompletableFuture<Void> acquire(String host) {
+        HostState state = hostState(host);
+        return delay(reserve(host)).thenCompose(ignored -> delay(state.remainingPause()));
+    }
+
+    // Повторная попытка: слот резервируется только после паузы, чтобы ожидание повтора не задерживало другие запросы
+    public CompletableFuture<Void> acquireAfter(String host, long delayNanos) {
+        return delay(delayNanos).thenCompose(ignored -> acquire(host));
+    }
+
+    /**
+     * Будит все ожидающие разрешения: они завершаются {@link java.util.concurrent.CancellationException},
+     * и запросы не отправляются. Зарезервированные под них слоты освобождаются — следующий запрос
+     * к хосту ждёт лишь минимальный интервал. Возвращает число отменённых разрешений.
+     */
+    public int cancelPendingPermits() {
+        int cancelled = 0;
+        for (CompletableFuture<Void> permit : pendingPermits) {
+            pendingPermits.remove(permit);
+            if (permit.cancel(false)) {
+                cancelled++;
+            }
+        }
+        long nextAllowed = System.nanoTime() + minDelayNanos;
+        hosts.values().forEach(state -> {
+            state.nextAllowed.accumulateAndGet(nextAllowed,
+                    (current, value) -> current == Long.MIN_VALUE ? current : Math.min(current, value));
+            state.pausedUntil = Long.MIN_VALUE;
+        });
+        return cancelled;
+    }
+
+    // Резервирует для хоста ближайший свободный слот и возвращает время ожидания до него в наносекундах
+    public long reserve(String host) {
+        HostState state = hostState(host);
+        long interval = Math.max(politeness.isAdaptive() ? state.limit.nextInterval() : nextInterval(), state.crawlDelayNanos);
+        long now = System.nanoTime();
+
+        while (true) {
+            long nextAllowed = state.nextAllowed.get();
+            long slot = nextAllowed == Long.MIN_VALUE ? now : Math.max(now, nextAllowed);
+            if (state.nextAllowed.compareAndSet(nextAllowed, slot + interval)) {
+                state.recordGrant(slot);
+                return slot - now;
+            }
+        }
+    }
+
+    // Crawl-delay из robots.txt: интервал для хоста не меньше указанного, даже если настройки допускают меньший
+    public void setCrawlDelay(String host, long delayMillis) {
+        hostState(host).crawlDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+    }
+
+    /**
+     * Ответ хоста на запрос, отправленный в {@code sentAt}: подстраивает интервал и предел одновременных запросов.
+     * Retry-After при 429/503 откладывает следующий слот хоста не меньше чем на указанное время,
+     * но не больше {@code crawler.politeness.max-retry-after}. Запросы, отменённые остановкой, не учитываются.
+     */
+    public void onResponse(String host, long sentAt, FetchResult result, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof CancellationException) {
+            return;
+        }
+        HostState state = hostState(host);
+        long now = System.nanoTime();
+        boolean overloaded = result != null && result.isOverloaded();
+        boolean failed = error != null || result.getStatusCode() >= 500;
+        state.limit.onResponse(sentAt, now - sentAt, overloaded, failed);
+
+        long pauseNanos = circuitBreaker.isEnabled() ? state.breaker.onResult(failed || overloaded) : 0;
+        if (pauseNanos > 0) {
+            state.pause(now + pauseNanos);
+            log.warn("Хост {} отвечает ошибками: запросы к нему приостановлены на {} с", host, TimeUnit.NANOSECONDS.toSeconds(pauseNanos));
+        }
+
+        Duration retryAfter = overloaded ? result.getRetryAfter() : null;
+        if (retryAfter != null && !retryAfter.isZero()) {
+            long waitNanos = Math.min(retryAfter.toNanos(), politeness.getMaxRetryAfter().toNanos());
+            state.pause(now + waitNanos);
+            log.debug("Хост {} просит повторить запрос через {} с", host, retryAfter.toSeconds());
+        }
+    }
+
+    /**
+     * Сколько запросов к хосту можно держать одновременно; без подстройки — crawler.max-in-flight-per-site.
+     * Пока автомат защиты хоста не замкнут, запрос один: после паузы он же и пробный.
+     */
+    public int getConcurrencyLimit(String host) {
+        HostState state = hostState(host);
+        if (circuitBreaker.isEnabled() && state.breaker.getState() != HostCircuitBreaker.State.CLOSED) {
+            return 1;
+        }
+        return politeness.isAdaptive() ? state.limit.getConcurrency() : maxConcurrency;
+    }
+
+    // Текущий интервал между запросами к хосту, мс
+    public long getDelayMillis(String host) {
+        return politeness.isAdaptive()
+                ? TimeUnit.NANOSECONDS.toMillis(hostState(host).limit.getDelayNanos())
+                : TimeUnit.NANOSECONDS.toMillis((minDelayNanos + maxDelayNanos) / 2);
+    }
+
+    // Фактическая частота запросов к каждому хосту (запросов в секунду)
+    public Map<String, Double> getRequestsPerSecond() {
+        Map<String, Double> result = new LinkedHashMap<>();
+        hosts.forEach((host, state) -> result.put(host, state.requestsPerSecond()));
+        return result;
+    }
+
+    private HostState hostState(String host) {
+        return hosts.computeIfAbsent(host, key -> new HostState(
+                new AdaptiveHostLimit(minDelayNanos, maxDelayNanos, maxConcurrency, politeness), new HostCircuitBreaker(circuitBreaker)));
+    }
+
+    // Разрешение, которое завершит общий таймер; остановка индексации отменяет его досрочно
+    private CompletableFuture<Void> delay(long waitNanos) {
+        if (waitNanos <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> permit = new CompletableFuture<>();
+        pendingPermits.add(permit);
+        timer.schedule(() -> {
+            pendingPermits.remove(permit);
+            permit.complete(null);
+        }, waitNanos, TimeUnit.NANOSECONDS);
+        return permit;
+    }
+
+    private long nextInterval() {
+        if (maxDelayNanos <= minDelayNanos) {
+            return minDelayNanos;
+        }
+        return ThreadLocalRandom.current().nextLong(minDelayNanos, maxDelayNanos + 1);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    private static final class HostState {
+
+        private final AtomicLong nextAllowed = new AtomicLong(Long.MIN_VALUE);
+        private final LongAdder grants = new LongAdder();
+        private final AtomicLong firstGrant = new AtomicLong(Long.MIN_VALUE);
+        private final AtomicLong lastGrant = new AtomicLong(Long.MIN_VALUE);
+        private final AdaptiveHostLimit limit;
+        private final HostCircuitBreaker breaker;
+        private volatile long crawlDelayNanos;
+        // Раньше этого момента запросы к хосту не отправляются, даже по уже выданным слотам
+        private volatile long pausedUntil = Long.MIN_VALUE;
+
+        HostState(AdaptiveHostLimit limit, HostCircuitBreaker breaker) {
+            this.limit = limit;
+            this.breaker = breaker;
+        }
+
+        synchronized void pause(long until) {
+            if (pausedUntil == Long.MIN_VALUE || until - pausedUntil > 0) {
+                pausedUntil = until;
+            }
+            nextAllowed.accumulateAndGet(until, Math::max);
+        }
+
+        long remainingPause() {
+            long until = pausedUntil;
+            return until == Long.MIN_VALUE ? 0 : until - System.nanoTime();
+        }
+
+        void recordGrant(long slot) {
+            grants.increment();
+            firstGrant.compareAndSet(Long.MIN_VALUE, slot);
+            lastGrant.accumulateAndGet(slot, (current, value) -> current == Long.MIN_VALUE ? value : Math.max(current, value));
+        }
+
+        double requestsPerSecond() {
+            long count = grants.sum();
+            long first = firstGrant.get();
+            long last = lastGrant.get();
+            if (count < 2 || last <= first) {
+                return 0.0;
+            }
+            return (count - 1) / ((last - first) / 1_000_000_000.0);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package searchengine.processors;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Разбор HTML за один проход по дереву Jsoup: ссылки, видимый текст, заголовок страницы,
+ * заголовки h1–h3 и rel=canonical собираются одновременно, без повторного разбора и регулярных выражений.
+ */
+public final class HtmlPageParser {
+
+    // Содержимое этих элементов пользователь не видит
+    private static final Set<String> HIDDEN_TAGS = Set.of("script", "style", "noscript", "template", "svg", "head");
+    private static final Set<String> HEADING_TAGS = Set.of("h1", "h2", "h3");
+
+    private HtmlPageParser() {
+    }
+
+    public static ParsedPage parse(String html, String baseUrl) {
+        Document document = Jsoup.parse(html == null ? "" : html, baseUrl == null ? "" : baseUrl);
+        Collector collector = new Collector();
+        NodeTraversor.traverse(collector, document);
+        return new ParsedPage(collector.title.toString().trim(), String.join("\n", collector.headings),
+                collector.text.toString().trim(), collector.links, collector.canonicalUrl);
+    }
+
+    private static final class Collector implements NodeVisitor {
+
+        private final StringBuilder text = new StringBuilder();
+        private final StringBuilder title = new StringBuilder();
+        private final List<String> headings = new ArrayList<>();
+        private final List<String> links = new ArrayList<>();
+        private String canonicalUrl;
+
+        private int hiddenDepth;
+        private boolean inTitle;
+        private StringBuilder heading;
+
+        @Override
+        public void head(Node node, int depth) {
+            if (node instanceof TextNode textNode) {
+                String value = textNode.getWholeText();
+                if (inTitle) {
+                    appendWords(title, value);
+                } else if (hiddenDepth == 0) {
+                    appendWords(text, value);
+                    if (heading != null) {
+                        appendWords(heading, value);
+                    }
+                }
+                return;
+            }
+            if (!(node instanceof Element element)) {
+                return;
+            }
+
+            String tag = element.normalName();
+            switch (tag) {
+                case "title" -> inTitle = title.length() == 0;
+                case "a" -> {
+                    if (element.hasAttr("href")) {
+                        String url = element.absUrl("href");
+                        if (!url.isEmpty()) {
+                            links.add(url);
+                        }
+                    }
+                }
+                case "link" -> {
+                    if (canonicalUrl == null && "canonical".equalsIgnoreCase(element.attr("rel")) && element.hasAttr("href")) {
+                        canonicalUrl = element.absUrl("href");
+                    }
+                }
+                default -> {
+                }
+            }
+            if (HIDDEN_TAGS.contains(tag)) {
+                hiddenDepth++;
+            } else if (HEADING_TAGS.contains(tag) && hiddenDepth == 0 && heading == null) {
+                heading = new StringBuilder();
+            }
+            // Блочные элементы разделяют слова, даже если между ними нет пробелов в разметке
+            if (element.isBlock() || tag.equals("br")) {
+                separate(text);
+            }
+        }
+
+        @Override
+        public void tail(Node node, int depth) {
+            if (!(node instanceof Element element)) {
+                return;
+            }
+            String tag = element.normalName();
+            if (tag.equals("title")) {
+                inTitle = false;
+            }
+            if (HIDDEN_TAGS.contains(tag)) {
+                hiddenDepth--;
+            } else if (HEADING_TAGS.contains(tag) && heading != null) {
+                String value = heading.toString().trim();
+                if (!value.isEmpty()) {
+                    headings.add(value);
+                }
+                heading = null;
+            }
+            if (element.isBlock()) {
+                separate(text);
+            }
+        }
+
+        // Пробельные символы схлопываются в один пробел прямо при сборке текста
+        private static void appendWords(StringBuilder target, String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char ch = value.charAt(i);
+                if (Character.isWhitespace(ch) || Character.isSpaceChar(ch)) {
+                    separate(target);
+                } else {
+                    target.append(ch);
+                }
+            }
+        }
+
+        private static void separate(StringBuilder target) {
+            if (target.length() > 0 && target.charAt(target.length() - 1) != ' ') {
+                target.append(' ');
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package searchengine.processors;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Словарь лемм в памяти: для каждого сайта лемма → id строки lemma и число страниц с ней (frequency).
+ * Словарь сайта невелик по сравнению с таблицей index, поэтому держится целиком: заполняется из базы
+ * при запуске, а индексация и удаление страниц обновляют его после фиксации своих транзакций.
+ * Частоты лемм, впервые появившихся одновременно на нескольких страницах, могут ненадолго разойтись
+ * с базой — по окончании обхода словарь сайта перечитывается.
+ * Обращения считаются в {@code lemma.cache.requests} с тегом {@code result=hit|miss}.
+ */
+@Component
+@Slf4j
+public class LemmaCache {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Integer, Map<String, CachedLemma>> sites = new ConcurrentHashMap<>();
+    private final Map<Integer, ReadWriteLock> siteLocks = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+
+    public LemmaCache(JdbcTemplate jdbcTemplate, MeterRegistry registry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.hits = Counter.builder("lemma.cache.requests").tag("result", "hit")
+                .description("Обращения к словарю лемм").register(registry);
+        this.misses = Counter.builder("lemma.cache.requests").tag("result", "miss")
+                .description("Обращения к словарю лемм").register(registry);
+        Gauge.builder("lemma.cache.size", sites, cached -> cached.values().stream().mapToInt(Map::size).sum())
+                .description("Леммы всех сайтов в словаре").register(registry);
+        Gauge.builder("lemma.cache.hit.ratio", this, LemmaCache::getHitRatio)
+                .description("Доля обращений, обслуженных словарём без запроса к базе").register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        long startedAt = System.nanoTime();
+        int[] loaded = new int[1];
+        try {
+            jdbcTemplate.query("SELECT id, site_id, lemma, frequency FROM lemma", resultSet -> {
+                siteLemmas(resultSet.getInt("site_id")).put(resultSet.getString("lemma"),
+                        new CachedLemma(resultSet.getInt("id"), resultSet.getString("lemma"), resultSet.getInt("frequency")));
+                loaded[0]++;
+            });
+        } catch (DataAccessException e) {
+            // Без прогрева словарь наполнится промахами по ходу работы
+            log.warn("Не удалось загрузить словарь лемм: {}", e.getMessage());
+            return;
+        }
+        log.info("Словарь лемм загружен: {} лемм {} сайтов за {} мс", loaded[0], sites.size(), (System.nanoTime() - startedAt) / 1_000_000);
+    }
+
+    // Лемма сайта или null, если её нет в словаре
+    public CachedLemma get(int siteId, String lemma) {
+        CachedLemma cached = siteLemmas(siteId).get(lemma);
+        (cached != null ? hits : misses).increment();
+        return cached;
+    }
+
+    // Найденные в словаре леммы из списка; отсутствующие в результат не попадают
+    public Map<String, CachedLemma> getAll(int siteId, Collection<String> lemmas) {
+        Map<String, CachedLemma> siteLemmas = siteLemmas(siteId);
+        Map<String, CachedLemma> found = new HashMap<>(lemmas.size() * 2);
+        for (String lemma : lemmas) {
+            CachedLemma cached = siteLemmas.get(lemma);
+            if (cached != null) {
+                found.put(lemma, cached);
+            }
+        }
+        hits.increment(found.size());
+        misses.increment(lemmas.size() - found.size());
+        return found;
+    }
+
+    /**
+     * Лемма, прочитанная из базы. Частота в базе после фиксации только растёт, пока страницы добавляются,
+     * поэтому из двух прочитанных значений верно большее, а прибавленное словарём не теряется.
+     */
+    public void put(int siteId, String lemma, int id, int frequency) {
+        CachedLemma cached = siteLemmas(siteId).putIfAbsent(lemma, new CachedLemma(id, lemma, frequency));
+        if (cached != null) {
+            cached.frequency.accumulateAndGet(frequency, Math::max);
+        }
+    }
+
+    public void addFrequency(int siteId, String lemma, int delta) {
+        CachedLemma cached = siteLemmas(siteId).get(lemma);
+        if (cached != null) {
+            cached.frequency.addAndGet(delta);
+        }
+    }
+
+    public void remove(int siteId, String lemma) {
+        siteLemmas(siteId).remove(lemma);
+    }
+
+    /**
+     * Блокировка лемм сайта. Сохранение и удаление страниц держат чтение до завершения своей транзакции,
+     * пересчёт частот и удаление строк lemma — запись: id, взятый из словаря, не может указывать
+     * на удалённую строку, а пересчёт не пропускает и не удваивает изменения страниц.
+     */
+    public ReadWriteLock getSiteLock(int siteId) {
+        return siteLocks.computeIfAbsent(siteId, id -> new ReentrantReadWriteLock());
+    }
+
+    public void evictSite(int siteId) {
+        sites.remove(siteId);
+    }
+
+    // Перечитывает словарь сайта из базы: частоты снова точно совпадают с таблицей lemma
+    public void reloadSite(int siteId) {
+        Map<String, CachedLemma> reloaded = new ConcurrentHashMap<>();
+        jdbcTemplate.query("SELECT id, lemma, frequency FROM lemma WHERE site_id = ?", resultSet -> {
+            reloaded.put(resultSet.getString("lemma"),
+                    new CachedLemma(resultSet.getInt("id"), resultSet.getString("lemma"), resultSet.getInt("frequency")));
+        }, siteId);
+        sites.put(siteId, reloaded);
+    }
+
+    public double getHitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private Map<String, CachedLemma> siteLemmas(int siteId) {
+        return sites.computeIfAbsent(siteId, id -> new ConcurrentHashMap<>());
+    }
+
+    // Лемма сайта: id строки неизменен, частота меняется вместе с таблицей
+    public static final class CachedLemma {
+        @Getter
+        private final int id;
+        @Getter
+        private final String lemma;
+        private final AtomicInteger frequency;
+
+        private CachedLemma(int id, String lemma, int frequency) {
+            this.id = id;
+            this.lemma = lemma;
+            this.frequency = new AtomicInteger(frequency);
+        }
+
+        public int getFrequency() {
+            return frequency.get();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package searchengine.processors;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.CrawlerProperties;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Накопление изменений частот лемм в памяти вместо обновления строк lemma каждой страницей.
+ * Частые слова встречаются почти на каждой странице, и UPDATE их строк выстраивал параллельные
+ * транзакции в очередь на блокировке. Здесь прибавки копятся в {@link LongAdder} на строку lemma
+ * и раз в {@code flush-interval} уходят в базу одним пакетом {@code frequency = frequency + ?}.
+ * Прибавки, не дошедшие до базы к аварийной остановке, теряются, поэтому при продолжении обхода
+ * и по его окончании {@link #recountSite} пересчитывает частоты сайта по таблице index
+ * и удаляет строки, на которые не осталось страниц.
+ */
+@Component
+@Slf4j
+public class LemmaFrequencyCounter {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final LemmaCache lemmaCache;
+    private final Map<Integer, Pending> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+    private final Timer flushTimer;
+
+    public LemmaFrequencyCounter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                 LemmaCache lemmaCache, CrawlerProperties crawlerProperties, MeterRegistry registry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.lemmaCache = lemmaCache;
+        this.flushTimer = Timer.builder("lemma.frequency.flush")
+                .description("Сброс накопленных частот лемм в базу").register(registry);
+        Gauge.builder("lemma.frequency.pending", this, LemmaFrequencyCounter::getPendingLemmas)
+                .description("Строки lemma с несброшенным изменением частоты").register(registry);
+
+        long interval = Math.max(1, crawlerProperties.getLemmaFrequency().getFlushInterval().toMillis());
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lemma-frequency-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (Exception e) {
+                log.warn("Не удалось сбросить частоты лемм: {}", e.getMessage());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    // Изменение частоты строки lemma; вызывается после фиксации транзакции, изменившей index
+    public void add(int siteId, int lemmaId, int delta) {
+        pending.computeIfAbsent(lemmaId, id -> new Pending(siteId)).delta.add(delta);
+    }
+
+    // Ещё не сброшенная в базу часть частоты: прочитанное из базы значение её не содержит
+    public long getPending(int lemmaId) {
+        Pending lemma = pending.get(lemmaId);
+        return lemma == null ? 0 : lemma.delta.sum();
+    }
+
+    // Изменения строк lemma сайта, которые удаляются вместе с ним
+    public void discardSite(int siteId) {
+        pending.values().removeIf(lemma -> lemma.siteId == siteId);
+    }
+
+    public long getPendingLemmas() {
+        return pending.values().stream().filter(lemma -> lemma.delta.sum() != 0).count();
+    }
+
+    /**
+     * Переносит накопленные изменения в таблицу lemma. Счётчики обнуляются до записи, а прибавки,
+     * пришедшие во время сброса, остаются до следующего. При ошибке снятые значения возвращаются обратно.
+     * Строки обновляются по возрастанию id, как и вставляются строки index, — сброс и страницы
+     * блокируют строки lemma в одном порядке.
+     */
+    public synchronized void flush() {
+        List<Delta> deltas = new ArrayList<>();
+        pending.forEach((lemmaId, lemma) -> {
+            long delta = lemma.delta.sumThenReset();
+            if (delta != 0) {
+                deltas.add(new Delta(lemmaId, lemma, delta));
+            }
+        });
+        if (deltas.isEmpty()) {
+            return;
+        }
+        deltas.sort(Comparator.comparingInt(delta -> delta.lemmaId));
+
+        long startedAt = System.nanoTime();
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate("UPDATE lemma SET frequency = frequency + ? WHERE id = ?",
+                            deltas, BATCH_SIZE, (statement, delta) -> {
+                                statement.setLong(1, delta.delta);
+                                statement.setInt(2, delta.lemmaId);
+                            }));
+        } catch (RuntimeException e) {
+            deltas.forEach(delta -> delta.lemma.delta.add(delta.delta));
+            throw e;
+        } finally {
+            flushTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+        log.debug("Сброшены частоты {} лемм за {} мс", deltas.size(), (System.nanoTime() - startedAt) / 1_000_000);
+    }
+
+    /**
+     * Пересчитывает частоты лемм сайта по строкам index, удаляет строки lemma, на которые не осталось
+     * страниц, и перечитывает словарь сайта. Под блокировкой записи сайта ни одно сохранение или удаление
+     * страниц не идёт, поэтому несброшенные прибавки сайта уже учтены в index и отбрасываются,
+     * а id из словаря не может указывать на удалённую строку. Возвращает число удалённых строк.
+     */
+    public synchronized int recountSite(int siteId) {
+        Lock lock = lemmaCache.getSiteLock(siteId).writeLock();
+        lock.lock();
+        try {
+            long startedAt = System.nanoTime();
+            int removed = transactionTemplate.execute(status -> {
+                jdbcTemplate.update("UPDATE lemma SET frequency = (SELECT COUNT(*) FROM indexes WHERE indexes.lemma_id = lemma.id)"
+                        + " WHERE site_id = ?", siteId);
+                return jdbcTemplate.update("DELETE FROM lemma WHERE site_id = ? AND frequency = 0", siteId);
+            });
+            discardSite(siteId);
+            lemmaCache.reloadSite(siteId);
+            log.debug("Пересчитаны частоты лемм сайта {} за {} мс", siteId, (System.nanoTime() - startedAt) / 1_000_000);
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("Частоты лемм при остановке не сохранены: {}", e.getMessage());
+        }
+    }
+
+    private static final class Pending {
+        private final int siteId;
+        private final LongAdder delta = new LongAdder();
+
+        private Pending(int siteId) {
+            this.siteId = siteId;
+        }
+    }
+
+    private static final class Delta {
+        private final int lemmaId;
+        private final Pending lemma;
+        private final long delta;
+
+        private Delta(int lemmaId, Pending lemma, long delta) {
+            this.lemmaId = lemmaId;
+            this.lemma = lemma;
+            this.delta = delta;
+        }
+    }
+}
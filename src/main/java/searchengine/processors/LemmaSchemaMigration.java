@@ -0,0 +1,106 @@
+package searchengine.processors;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.model.LemmaModel;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+
+/**
+ * Приводит таблицу lemma, созданную прежними версиями, к схеме, на которую рассчитана пакетная запись лемм.
+ * {@code ddl-auto: update} не меняет существующие столбцы и молча пропускает ключ, который не удалось создать,
+ * поэтому здесь столбец lemma переводится на utf8mb4_bin, а перед созданием ключа (site_id, lemma)
+ * сливаются строки-дубли, оставленные прежней записью «найти, иначе сохранить». Выполняется после
+ * обновления схемы Hibernate и до приёма запросов; без ключа пакетная запись плодила бы дубли,
+ * поэтому, если его создать не удалось, приложение не запускается.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+@Slf4j
+public class LemmaSchemaMigration {
+
+    private static final String BINARY_COLLATION = "utf8mb4_bin";
+    private static final String UNIQUE_KEY = "uk_lemma_site_lemma";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public LemmaSchemaMigration(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void migrate() {
+        // Проверки идут по information_schema MySQL; встроенная база замеров создаётся Hibernate заново
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        if (!"MySQL".equalsIgnoreCase(database)) {
+            return;
+        }
+        migrateCollation();
+        if (!hasUniqueKey()) {
+            addUniqueKey();
+        }
+    }
+
+    // При utf8mb4_0900_ai_ci «зайка» и «заика» — одна строка, а словарь и пакетная запись различают их
+    private void migrateCollation() {
+        List<String> collations = jdbcTemplate.queryForList("SELECT collation_name FROM information_schema.columns"
+                + " WHERE table_schema = DATABASE() AND table_name = 'lemma' AND column_name = 'lemma'", String.class);
+        if (collations.isEmpty() || BINARY_COLLATION.equals(collations.get(0))) {
+            return;
+        }
+        log.info("Столбец lemma.lemma переводится со сравнения {} на {}", collations.get(0), BINARY_COLLATION);
+        jdbcTemplate.execute("ALTER TABLE lemma MODIFY lemma " + LemmaModel.LEMMA_COLUMN + " NOT NULL");
+    }
+
+    // Уникальный индекс ровно по (site_id, lemma) под любым именем
+    private boolean hasUniqueKey() {
+        List<String> keys = jdbcTemplate.queryForList("SELECT index_name FROM information_schema.statistics"
+                + " WHERE table_schema = DATABASE() AND table_name = 'lemma' AND non_unique = 0 GROUP BY index_name"
+                + " HAVING GROUP_CONCAT(column_name ORDER BY seq_in_index) = 'site_id,lemma'", String.class);
+        return !keys.isEmpty();
+    }
+
+    private void addUniqueKey() {
+        long startedAt = System.nanoTime();
+        try {
+            int merged = transactionTemplate.execute(status -> mergeDuplicateLemmas());
+            jdbcTemplate.execute("ALTER TABLE lemma ADD CONSTRAINT " + UNIQUE_KEY + " UNIQUE (site_id, lemma)");
+            log.info("Создан ключ {}: слито строк-дублей lemma {} за {} мс", UNIQUE_KEY, merged,
+                    (System.nanoTime() - startedAt) / 1_000_000);
+        } catch (DataAccessException e) {
+            throw new IllegalStateException("Не удалось создать ключ " + UNIQUE_KEY + " таблицы lemma: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Оставляет у каждой леммы сайта строку с меньшим id: строки index дублей переводятся на неё,
+     * совпавшие строки index одной страницы складываются, а частоты пересчитываются по index.
+     */
+    private int mergeDuplicateLemmas() {
+        int moved = jdbcTemplate.update("UPDATE indexes i JOIN lemma l ON l.id = i.lemma_id"
+                + " JOIN (SELECT site_id, lemma, MIN(id) AS keep_id FROM lemma GROUP BY site_id, lemma HAVING COUNT(*) > 1) k"
+                + " ON k.site_id = l.site_id AND k.lemma = l.lemma"
+                + " SET i.lemma_id = k.keep_id WHERE l.id <> k.keep_id");
+        if (moved > 0) {
+            jdbcTemplate.update("UPDATE indexes i JOIN (SELECT MIN(id) AS keep_id, SUM(rank_val) AS total FROM indexes"
+                    + " GROUP BY page_id, lemma_id HAVING COUNT(*) > 1) d ON d.keep_id = i.id SET i.rank_val = d.total");
+            jdbcTemplate.update("DELETE i FROM indexes i JOIN indexes k"
+                    + " ON k.page_id = i.page_id AND k.lemma_id = i.lemma_id AND k.id < i.id");
+        }
+        int merged = jdbcTemplate.update("DELETE l FROM lemma l JOIN lemma k"
+                + " ON k.site_id = l.site_id AND k.lemma = l.lemma AND k.id < l.id");
+        if (merged > 0) {
+            jdbcTemplate.update("UPDATE lemma l SET frequency = (SELECT COUNT(*) FROM indexes i WHERE i.lemma_id = l.id)");
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,38 @@
+package searchengine.processors;
+
+import lombok.Getter;
+
+// Тело ответа после потоковой загрузки: текст страницы или причина, по которой чтение прервано
+@Getter
+public class PageBody {
+
+    private final String text;
+    // null — тело прочитано полностью
+    private final SkipReason skipReason;
+    // Байты тела, полученные по сети (до распаковки gzip/deflate)
+    private final long wireBytes;
+    // Байты тела после распаковки
+    private final long decodedBytes;
+
+    private PageBody(String text, SkipReason skipReason, long wireBytes, long decodedBytes) {
+        this.text = text;
+        this.skipReason = skipReason;
+        this.wireBytes = wireBytes;
+        this.decodedBytes = decodedBytes;
+    }
+
+    public static PageBody of(String text, long wireBytes, long decodedBytes) {
+        return new PageBody(text, null, wireBytes, decodedBytes);
+    }
+
+    public static PageBody skipped(SkipReason reason, long wireBytes) {
+        return new PageBody("", reason, wireBytes, 0);
+    }
+
+    public enum SkipReason {
+        // Тип содержимого не HTML: PDF, архивы, медиа
+        CONTENT_TYPE,
+        // Content-Length или фактический объём больше crawler.download.max-page-size
+        TOO_LARGE
+    }
+}
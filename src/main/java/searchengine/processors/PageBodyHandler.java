@@ -0,0 +1,248 @@
+package searchengine.processors;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Потоковый приём тела страницы. Заголовки ответа проверяются до чтения тела: чужой тип содержимого
+ * или заявленный Content-Length больше предела отменяют загрузку сразу, а без Content-Length чтение
+ * прерывается, как только накопится больше предела. Ответы с Content-Encoding gzip/deflate распаковываются
+ * с тем же пределом на распакованный объём. Кодировка берётся из Content-Type,
+ * затем из {@code <meta charset>} в начале документа, иначе UTF-8.
+ */
+public class PageBodyHandler implements HttpResponse.BodyHandler<PageBody> {
+
+    // Сколько байт от начала документа просматривается в поисках <meta charset>
+    private static final int META_SNIFF_BYTES = 4096;
+    private static final Pattern HEADER_CHARSET = Pattern.compile("charset\\s*=\\s*[\"']?([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern META_CHARSET = Pattern.compile("<meta[^>]+charset\\s*=\\s*[\"']?([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
+
+    private final long maxBytes;
+    private final List<String> allowedContentTypes;
+
+    public PageBodyHandler(long maxBytes, List<String> allowedContentTypes) {
+        this.maxBytes = maxBytes;
+        this.allowedContentTypes = allowedContentTypes;
+    }
+
+    @Override
+    public HttpResponse.BodySubscriber<PageBody> apply(HttpResponse.ResponseInfo responseInfo) {
+        HttpHeaders headers = responseInfo.headers();
+        String contentType = headers.firstValue("Content-Type").orElse("");
+        if (!isAllowedType(contentType)) {
+            return new CancellingSubscriber(PageBody.SkipReason.CONTENT_TYPE);
+        }
+        long contentLength = headers.firstValueAsLong("Content-Length").orElse(-1);
+        if (contentLength > maxBytes) {
+            return new CancellingSubscriber(PageBody.SkipReason.TOO_LARGE);
+        }
+        String contentEncoding = headers.firstValue("Content-Encoding").orElse("").trim().toLowerCase(Locale.ROOT);
+        return new LimitedSubscriber(maxBytes, contentLength, headerCharset(contentType), contentEncoding);
+    }
+
+    // Пустой Content-Type разрешён: такие страницы разбираются как HTML, как и раньше
+    private boolean isAllowedType(String contentType) {
+        String type = contentType.toLowerCase(Locale.ROOT);
+        if (type.isBlank()) {
+            return true;
+        }
+        for (String allowed : allowedContentTypes) {
+            if (type.startsWith(allowed.toLowerCase(Locale.ROOT))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Charset headerCharset(String contentType) {
+        Matcher matcher = HEADER_CHARSET.matcher(contentType);
+        return matcher.find() ? charsetOrNull(matcher.group(1)) : null;
+    }
+
+    private static Charset charsetOrNull(String name) {
+        try {
+            return Charset.forName(name);
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            return null;
+        }
+    }
+
+    // Отменяет подписку сразу: соединение закрывается, тело не передаётся
+    private static final class CancellingSubscriber implements HttpResponse.BodySubscriber<PageBody> {
+
+        private final CompletableFuture<PageBody> result = new CompletableFuture<>();
+        private final PageBody.SkipReason reason;
+
+        private CancellingSubscriber(PageBody.SkipReason reason) {
+            this.reason = reason;
+        }
+
+        @Override
+        public CompletionStage<PageBody> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.cancel();
+            result.complete(PageBody.skipped(reason, 0));
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.complete(PageBody.skipped(reason, 0));
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(PageBody.skipped(reason, 0));
+        }
+    }
+
+    private static final class LimitedSubscriber implements HttpResponse.BodySubscriber<PageBody> {
+
+        private final CompletableFuture<PageBody> result = new CompletableFuture<>();
+        private final long maxBytes;
+        private final Charset charset;
+        private final String contentEncoding;
+        private final ByteArrayOutputStream buffer;
+        private Flow.Subscription subscription;
+        private long bytesRead;
+        private boolean done;
+
+        private LimitedSubscriber(long maxBytes, long contentLength, Charset charset, String contentEncoding) {
+            this.maxBytes = maxBytes;
+            this.charset = charset;
+            this.contentEncoding = contentEncoding;
+            this.buffer = new ByteArrayOutputStream(contentLength > 0 ? (int) contentLength : 8192);
+        }
+
+        @Override
+        public CompletionStage<PageBody> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (done) {
+                return;
+            }
+            for (ByteBuffer item : items) {
+                bytesRead += item.remaining();
+                if (bytesRead > maxBytes) {
+                    done = true;
+                    subscription.cancel();
+                    result.complete(PageBody.skipped(PageBody.SkipReason.TOO_LARGE, bytesRead));
+                    return;
+                }
+                if (item.hasArray()) {
+                    buffer.write(item.array(), item.arrayOffset() + item.position(), item.remaining());
+                } else {
+                    byte[] chunk = new byte[item.remaining()];
+                    item.get(chunk);
+                    buffer.write(chunk, 0, chunk.length);
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done = true;
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            try {
+                byte[] decoded = decompress(buffer.toByteArray());
+                if (decoded.length > maxBytes) {
+                    result.complete(PageBody.skipped(PageBody.SkipReason.TOO_LARGE, bytesRead));
+                    return;
+                }
+                result.complete(PageBody.of(decode(decoded), bytesRead, decoded.length));
+            } catch (IOException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        // Распаковываем не больше предела плюс один байт — этого достаточно, чтобы отбросить слишком большой ответ
+        private byte[] decompress(byte[] bytes) throws IOException {
+            switch (contentEncoding) {
+                case "gzip", "x-gzip" -> {
+                    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+                        return in.readNBytes((int) Math.min(Integer.MAX_VALUE - 8, maxBytes + 1));
+                    }
+                }
+                case "deflate" -> {
+                    // По стандарту deflate идёт в обёртке zlib, но часть серверов отдаёт «сырой» поток
+                    try {
+                        return inflate(bytes, false);
+                    } catch (ZipException e) {
+                        return inflate(bytes, true);
+                    }
+                }
+                default -> {
+                    return bytes;
+                }
+            }
+        }
+
+        private byte[] inflate(byte[] bytes, boolean raw) throws IOException {
+            Inflater inflater = new Inflater(raw);
+            try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(bytes), inflater)) {
+                return in.readNBytes((int) Math.min(Integer.MAX_VALUE - 8, maxBytes + 1));
+            } finally {
+                inflater.end();
+            }
+        }
+
+        private String decode(byte[] bytes) {
+            // BOM UTF-8 важнее заголовков: так поступают и браузеры
+            if (bytes.length >= 3 && (bytes[0] & 0xff) == 0xef && (bytes[1] & 0xff) == 0xbb && (bytes[2] & 0xff) == 0xbf) {
+                return new String(bytes, 3, bytes.length - 3, StandardCharsets.UTF_8);
+            }
+            Charset effective = charset != null ? charset : metaCharset(bytes);
+            return new String(bytes, effective != null ? effective : StandardCharsets.UTF_8);
+        }
+
+        private static Charset metaCharset(byte[] bytes) {
+            String head = new String(bytes, 0, Math.min(bytes.length, META_SNIFF_BYTES), StandardCharsets.ISO_8859_1);
+            Matcher matcher = META_CHARSET.matcher(head);
+            return matcher.find() ? charsetOrNull(matcher.group(1)) : null;
+        }
+    }
+}
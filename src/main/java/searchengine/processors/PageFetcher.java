@@ -0,0 +1,286 @@
+package searchengine.processors;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerProperties;
+import searchengine.config.CrawlerSettings;
+import searchengine.exceptions.IndexingException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP-слой краулера. Каждая страница загружается одним GET-запросом,
+ * редиректы проходит сам клиент, поэтому отдельный HEAD за кодом ответа не нужен.
+ * Запросы отправляются асинхронно через {@link HttpClient#sendAsync}; общее число запросов в полёте
+ * ограничено {@code crawler.max-in-flight-total}, лишние ждут в очереди и не занимают потоки.
+ * Клиент договаривается о сжатии gzip/deflate и HTTP/2, соединения переиспользуются между запросами.
+ */
+@Component
+@Slf4j
+public class PageFetcher {
+
+    private static final String KEEP_ALIVE_PROPERTY = "jdk.httpclient.keepalive.timeout";
+
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+    private final CrawlerSettings crawlerSettings;
+    private final int maxInFlight;
+    private final Semaphore inFlightSlots;
+    private final Queue<WaitingRequest> waitingRequests = new ConcurrentLinkedQueue<>();
+    // Отправленные и ещё не завершённые обмены обходов (обмен → адрес сайта): остановка индексации прерывает их
+    private final Map<CompletableFuture<?>, String> inFlightRequests = new ConcurrentHashMap<>();
+    private final PageBodyHandler bodyHandler;
+
+    // Загрузки, прерванные по типу содержимого и по размеру, и объём фактически прочитанных тел
+    private final LongAdder skippedByContentType = new LongAdder();
+    private final LongAdder skippedBySize = new LongAdder();
+    private final Map<String, TransferStatistics> transferByHost = new ConcurrentHashMap<>();
+
+    public PageFetcher(CrawlerSettings crawlerSettings, CrawlerProperties crawlerProperties) {
+        this.crawlerSettings = crawlerSettings;
+        this.maxInFlight = Math.max(1, crawlerProperties.getMaxInFlightTotal());
+        this.inFlightSlots = new Semaphore(maxInFlight);
+        CrawlerProperties.Download download = crawlerProperties.getDownload();
+        this.bodyHandler = new PageBodyHandler(download.getMaxPageSize().toBytes(), download.getAllowedContentTypes());
+        // Пул соединений JDK читает время жизни простаивающих соединений из системного свойства один раз
+        if (System.getProperty(KEEP_ALIVE_PROPERTY) == null) {
+            System.setProperty(KEEP_ALIVE_PROPERTY, String.valueOf(crawlerSettings.getKeepAliveSeconds()));
+        }
+        this.requestTimeout = Duration.ofMillis(crawlerSettings.getRequestTimeoutMs());
+        this.httpClient = HttpClient.newBuilder()
+                .version(httpVersion(crawlerSettings.getHttpVersion()))
+                .connectTimeout(Duration.ofMillis(crawlerSettings.getConnectTimeoutMs()))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    // Синхронная загрузка для одиночной индексации страницы
+    public FetchResult fetch(String url) {
+        try {
+            return fetchAsync(url).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IndexingException indexingException) {
+                throw indexingException;
+            }
+            throw new IndexingException("Ошибка при получении содержимого страницы: " + e.getMessage(), e);
+        }
+    }
+
+    // Служебные файлы (robots.txt, sitemap) загружаются как есть: sitemap может прийти сжатым gzip
+    public HttpResponse<byte[]> fetchBytes(String url) {
+        try {
+            return httpClient.send(buildRequest(url, null, null, false), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            throw new IndexingException("Ошибка при получении содержимого страницы: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexingException("Загрузка прервана: " + url, e);
+        }
+    }
+
+    public CompletableFuture<FetchResult> fetchAsync(String url) {
+        return fetchAsync(url, null, null);
+    }
+
+    public CompletableFuture<FetchResult> fetchAsync(String url, String etag, String lastModified) {
+        return fetchAsync(url, etag, lastModified, null);
+    }
+
+    /**
+     * Условный запрос: при совпадении валидаторов сервер ответит 304 без тела.
+     * crawlKey — адрес сайта, обход которого делает запрос; {@link #cancelCrawl} прерывает только такие запросы,
+     * а загрузки без него (индексация одной страницы) остановка индексации не затрагивает.
+     */
+    public CompletableFuture<FetchResult> fetchAsync(String url, String etag, String lastModified, String crawlKey) {
+        CompletableFuture<FetchResult> result = new CompletableFuture<>();
+        Runnable send = () -> {
+            CompletableFuture<HttpResponse<PageBody>> exchange;
+            try {
+                exchange = httpClient.sendAsync(buildRequest(url, etag, lastModified, crawlerSettings.isCompression()), bodyHandler);
+            } catch (RuntimeException e) {
+                // Неверный адрес или закрытый клиент: запрос не ушёл, слот освобождаем, а ошибку отдаём странице
+                releaseSlot();
+                result.completeExceptionally(new IndexingException(
+                        "Ошибка при получении содержимого страницы: " + e.getMessage(), e));
+                return;
+            }
+            if (crawlKey != null) {
+                inFlightRequests.put(exchange, crawlKey);
+            }
+            exchange.whenComplete((response, error) -> {
+                inFlightRequests.remove(exchange);
+                releaseSlot();
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    result.completeExceptionally(new IndexingException(
+                            "Ошибка при получении содержимого страницы: " + cause.getMessage(), cause));
+                    return;
+                }
+                FetchResult fetchResult = FetchResult.of(url, response);
+                recordBody(fetchResult);
+                if (!url.equals(fetchResult.getFinalUrl())) {
+                    log.debug("Страница {} перенаправлена на {}", url, fetchResult.getFinalUrl());
+                }
+                result.complete(fetchResult);
+            });
+        };
+
+        if (inFlightSlots.tryAcquire()) {
+            send.run();
+        } else {
+            waitingRequests.add(new WaitingRequest(send, result, crawlKey));
+            startWaitingRequests();
+        }
+        return result;
+    }
+
+    /**
+     * Прерывает запросы обхода сайта: отправленные обмены отменяются вместе с соединением, ожидающие слота
+     * завершаются {@link java.util.concurrent.CancellationException}. Возвращает число прерванных запросов.
+     */
+    public int cancelCrawl(String crawlKey) {
+        int cancelled = 0;
+        for (WaitingRequest waiting : waitingRequests) {
+            if (crawlKey.equals(waiting.crawlKey) && waitingRequests.remove(waiting) && waiting.result.cancel(false)) {
+                cancelled++;
+            }
+        }
+        for (Map.Entry<CompletableFuture<?>, String> exchange : inFlightRequests.entrySet()) {
+            if (crawlKey.equals(exchange.getValue()) && exchange.getKey().cancel(true)) {
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    public long getSkippedByContentType() {
+        return skippedByContentType.sum();
+    }
+
+    public long getSkippedBySize() {
+        return skippedBySize.sum();
+    }
+
+    // Байты тел по сети и после распаковки для каждого хоста
+    public TransferStatistics getTransferStatistics(String host) {
+        return transferByHost.computeIfAbsent(host, key -> new TransferStatistics());
+    }
+
+    private void recordBody(FetchResult fetchResult) {
+        TransferStatistics transfer = getTransferStatistics(URI.create(fetchResult.getRequestedUrl()).getHost());
+        transfer.wireBytes.add(fetchResult.getWireBytes());
+        transfer.decodedBytes.add(fetchResult.getDecodedBytes());
+        if (fetchResult.getSkipReason() == PageBody.SkipReason.CONTENT_TYPE) {
+            skippedByContentType.increment();
+            log.debug("Страница {} пропущена: тип содержимого {}", fetchResult.getRequestedUrl(), fetchResult.getContentType());
+        } else if (fetchResult.getSkipReason() == PageBody.SkipReason.TOO_LARGE) {
+            skippedBySize.increment();
+            log.debug("Страница {} пропущена: больше допустимого размера", fetchResult.getRequestedUrl());
+        }
+    }
+
+    public int getInFlightCount() {
+        return maxInFlight - inFlightSlots.availablePermits();
+    }
+
+    public int getWaitingCount() {
+        return waitingRequests.size();
+    }
+
+    private void releaseSlot() {
+        inFlightSlots.release();
+        startWaitingRequests();
+    }
+
+    // Запускает ожидающие запросы, пока есть свободные слоты
+    private void startWaitingRequests() {
+        while (!waitingRequests.isEmpty() && inFlightSlots.tryAcquire()) {
+            WaitingRequest next = waitingRequests.poll();
+            if (next == null) {
+                inFlightSlots.release();
+                return;
+            }
+            next.send.run();
+        }
+    }
+
+    private HttpRequest buildRequest(String url, String etag, String lastModified, boolean compressed) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(requestTimeout)
+                .GET()
+                .header("User-Agent", Optional.ofNullable(crawlerSettings.getUserAgent())
+                        .orElse("Mozilla/5.0"))
+                .header("Referer", Optional.ofNullable(crawlerSettings.getReferrer())
+                        .orElse("https://www.google.com"));
+
+        // HttpClient не распаковывает ответы сам: это делает PageBodyHandler
+        if (compressed) {
+            builder.header("Accept-Encoding", "gzip, deflate");
+        }
+        if (etag != null && !etag.isBlank()) {
+            builder.header("If-None-Match", etag);
+        }
+        if (lastModified != null && !lastModified.isBlank()) {
+            builder.header("If-Modified-Since", lastModified);
+        }
+        return builder.build();
+    }
+
+    private static HttpClient.Version httpVersion(String value) {
+        if (value == null) {
+            return HttpClient.Version.HTTP_2;
+        }
+        String normalized = value.trim().toUpperCase(Locale.ROOT).replace('.', '_').replace('/', '_');
+        return normalized.equals("HTTP_1_1") ? HttpClient.Version.HTTP_1_1 : HttpClient.Version.HTTP_2;
+    }
+
+    // Запрос, ожидающий свободного слота, и результат, который нужно отменить при остановке
+    private static final class WaitingRequest {
+        private final Runnable send;
+        private final CompletableFuture<FetchResult> result;
+        private final String crawlKey;
+
+        private WaitingRequest(Runnable send, CompletableFuture<FetchResult> result, String crawlKey) {
+            this.send = send;
+            this.result = result;
+            this.crawlKey = crawlKey;
+        }
+    }
+
+    public static final class TransferStatistics {
+
+        private final LongAdder wireBytes = new LongAdder();
+        private final LongAdder decodedBytes = new LongAdder();
+
+        public long getWireBytes() {
+            return wireBytes.sum();
+        }
+
+        public long getDecodedBytes() {
+            return decodedBytes.sum();
+        }
+
+        // Во сколько раз сжатие уменьшило передачу; 1 — сжатия не было
+        public double getCompressionRatio() {
+            long wire = wireBytes.sum();
+            return wire == 0 ? 1.0 : (double) decodedBytes.sum() / wire;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package searchengine.processors;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.CrawlerProperties;
+import searchengine.model.PageModel;
+import searchengine.services.LemmaService;
+
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Отложенная запись новых страниц: стадия persist кладёт страницу с леммами в буфер, а поток сброса
+ * пишет накопленное одной транзакцией — пакетный INSERT страниц через JDBC, затем леммы и index всех
+ * страниц пакетом {@link LemmaService#saveLemmas(Map)}. Hibernate в записи не участвует.
+ * Сброс запускается, когда в буфере набралось {@code batch-pages} страниц, и раз в {@code flush-interval}.
+ * Если в буфере {@code capacity} страниц, {@link #submit} ждёт сброса — обход не обгоняет запись.
+ */
+@Component
+@Slf4j
+public class PageWriteBuffer {
+
+    private static final String INSERT_PAGE = "INSERT INTO page (site_id, path, code, content, etag, last_modified, content_hash,"
+            + " title, headings, plain_text, simhash, duplicate_of) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final LemmaService lemmaService;
+    private final int batchPages;
+    private final Semaphore capacity;
+    private final List<PendingPage> buffer = new ArrayList<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService timer;
+    private final Timer flushTimer;
+
+    public PageWriteBuffer(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, LemmaService lemmaService,
+                           CrawlerProperties crawlerProperties, MeterRegistry registry) {
+        CrawlerProperties.WriteBuffer settings = crawlerProperties.getWriteBuffer();
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.lemmaService = lemmaService;
+        this.batchPages = Math.max(1, settings.getBatchPages());
+        this.capacity = new Semaphore(Math.max(batchPages, settings.getCapacity()));
+        this.flushTimer = Timer.builder("crawler.write.flush")
+                .description("Запись пакета страниц, лемм и index из буфера")
+                .register(registry);
+        Gauge.builder("crawler.write.buffered", this, PageWriteBuffer::getBufferedPages)
+                .description("Страницы в буфере отложенной записи")
+                .register(registry);
+
+        long interval = Math.max(1, settings.getFlushInterval().toMillis());
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "page-write-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ставит новую страницу в очередь записи; lemmaCounts — null для страниц, которые не индексируются.
+     * Блокирует поток, пока буфер заполнен.
+     */
+    public void submit(PageModel page, Map<String, Integer> lemmaCounts) throws InterruptedException {
+        capacity.acquire();
+        int buffered;
+        synchronized (buffer) {
+            buffer.add(new PendingPage(page, lemmaCounts));
+            buffered = buffer.size();
+        }
+        if (buffered >= batchPages && flushScheduled.compareAndSet(false, true)) {
+            timer.execute(this::flushQuietly);
+        }
+    }
+
+    public int getBufferedPages() {
+        synchronized (buffer) {
+            return buffer.size();
+        }
+    }
+
+    // Записывает всё, что накоплено к этому моменту; вызывается потоком сброса и по окончании обхода сайта
+    public synchronized void flush() {
+        flushScheduled.set(false);
+        List<PendingPage> pages;
+        synchronized (buffer) {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            pages = new ArrayList<>(buffer);
+            buffer.clear();
+        }
+        long startedAt = System.nanoTime();
+        try {
+            for (int from = 0; from < pages.size(); from += batchPages) {
+                List<PendingPage> batch = pages.subList(from, Math.min(from + batchPages, pages.size()));
+                try {
+                    transactionTemplate.executeWithoutResult(status -> write(batch));
+                } catch (RuntimeException e) {
+                    // Одна неудачная строка (например, страница, уже сохранённая другим путём) не должна терять весь пакет
+                    log.warn("Пакет из {} страниц не записан ({}), записываем по одной", batch.size(), e.getMessage());
+                    batch.forEach(this::writeSingle);
+                }
+            }
+        } finally {
+            capacity.release(pages.size());
+            flushTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+        log.debug("Записано {} страниц за {} мс", pages.size(), (System.nanoTime() - startedAt) / 1_000_000);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+        flushQuietly();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Ошибка записи буфера страниц: {}", e.getMessage());
+        }
+    }
+
+    private void writeSingle(PendingPage page) {
+        try {
+            page.page.setId(null);
+            transactionTemplate.executeWithoutResult(status -> write(List.of(page)));
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Страница {} уже существует в базе данных", page.page.getPath());
+        } catch (RuntimeException e) {
+            log.error("Страница {} не записана: {}", page.page.getPath(), e.getMessage());
+        }
+    }
+
+    private void write(List<PendingPage> batch) {
+        insertPages(batch);
+
+        Map<PageModel, Map<String, Integer>> lemmas = new LinkedHashMap<>();
+        batch.stream().filter(page -> page.lemmaCounts != null).forEach(page -> lemmas.put(page.page, page.lemmaCounts));
+        lemmaService.saveLemmas(lemmas);
+
+        // Время статуса сайта — одним запросом на сайт за пакет, а не сохранением сайта на каждую страницу
+        Set<Integer> siteIds = batch.stream().map(page -> page.page.getSiteModel().getId()).collect(Collectors.toSet());
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        siteIds.forEach(siteId -> jdbcTemplate.update("UPDATE site SET status_time = ? WHERE id = ?", now, siteId));
+    }
+
+    // Пакетный INSERT страниц; сгенерированные id нужны строкам index
+    private void insertPages(List<PendingPage> batch) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_PAGE, Statement.RETURN_GENERATED_KEYS)) {
+                for (PendingPage pending : batch) {
+                    PageModel page = pending.page;
+                    statement.setInt(1, page.getSiteModel().getId());
+                    statement.setString(2, page.getPath());
+                    statement.setInt(3, page.getCode());
+                    statement.setString(4, page.getContent());
+                    statement.setString(5, page.getEtag());
+                    statement.setString(6, page.getLastModified());
+                    statement.setString(7, page.getContentHash());
+                    statement.setString(8, page.getTitle());
+                    statement.setString(9, page.getHeadings());
+                    statement.setString(10, page.getPlainText());
+                    if (page.getSimhash() != null) {
+                        statement.setLong(11, page.getSimhash());
+                    } else {
+                        statement.setNull(11, Types.BIGINT);
+                    }
+                    statement.setString(12, page.getDuplicateOf());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    for (PendingPage pending : batch) {
+                        if (!keys.next()) {
+                            throw new IllegalStateException("База не вернула id сохранённых страниц");
+                        }
+                        pending.page.setId(keys.getInt(1));
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    private static final class PendingPage {
+        private final PageModel page;
+        private final Map<String, Integer> lemmaCounts;
+
+        private PendingPage(PageModel page, Map<String, Integer> lemmaCounts) {
+            this.page = page;
+            this.lemmaCounts = lemmaCounts;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package searchengine.processors;
+
+import lombok.Getter;
+
+import java.util.List;
+
+// Результат единственного разбора HTML страницы: всё, что нужно обходу, индексации и поиску
+@Getter
+public class ParsedPage {
+
+    private final String title;
+    // Заголовки h1–h3 через перевод строки
+    private final String headings;
+    // Видимый текст страницы без script, style и служебных блоков
+    private final String text;
+    // Абсолютные адреса ссылок a[href] без канонизации
+    private final List<String> links;
+    // Адрес из <link rel="canonical">, если он указан
+    private final String canonicalUrl;
+
+    public ParsedPage(String title, String headings, String text, List<String> links, String canonicalUrl) {
+        this.title = title;
+        this.headings = headings;
+        this.text = text;
+        this.links = links;
+        this.canonicalUrl = canonicalUrl;
+    }
+
+    // Текст для лемматизации: заголовок страницы тоже участвует в поиске
+    public String getIndexableText() {
+        return title.isEmpty() ? text : title + " " + text;
+    }
+}
@@ -0,0 +1,125 @@
+package searchengine.processors;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import searchengine.dto.statistics.PipelineStageStatistics;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Стадия конвейера: очередь на входе и не более {@code workers} одновременных задач в общем {@link CrawlExecutor}.
+ * Своих потоков у стадии нет — каждый элемент обрабатывается отдельной задачей в очереди сайта, поэтому
+ * сайты делят потоки по весам. Очередь стадии не блокирует: число страниц в конвейере ограничивает
+ * {@link SiteCrawler}, и в очереди никогда не бывает больше {@code capacity} элементов.
+ */
+@Slf4j
+public class PipelineStage<T> {
+
+    private final String name;
+    private final String site;
+    private final int workers;
+    private final int capacity;
+    private final CrawlExecutor executor;
+    private final String siteKey;
+    private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger activeTasks = new AtomicInteger();
+    private final Consumer<T> handler;
+    private final Timer timer;
+
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private volatile boolean running;
+    private volatile long startedAt;
+
+    public PipelineStage(String name, String site, int workers, int capacity, CrawlExecutor executor, String siteKey, Timer timer, Consumer<T> handler) {
+        this.name = name;
+        this.site = site;
+        this.workers = Math.max(1, workers);
+        this.capacity = Math.max(1, capacity);
+        this.executor = executor;
+        this.siteKey = siteKey;
+        this.handler = handler;
+        this.timer = timer;
+    }
+
+    public void start() {
+        running = true;
+        startedAt = System.nanoTime();
+    }
+
+    // Ставит элемент в очередь стадии и, если стадия не занята полностью, задачу в общий пул
+    public void submit(T item) {
+        queue.add(item);
+        queueDepth.incrementAndGet();
+        scheduleIfIdle();
+    }
+
+    // Новые задачи больше не ставятся; к этому моменту все страницы сайта уже завершены
+    public void shutdown() {
+        running = false;
+        if (!queue.isEmpty()) {
+            log.warn("Стадия {} сайта {} остановлена с {} необработанными элементами", name, site, queueDepth.get());
+        }
+    }
+
+    public PipelineStageStatistics getStatistics() {
+        long count = processed.sum();
+        double elapsedSeconds = (System.nanoTime() - startedAt) / 1_000_000_000.0;
+
+        PipelineStageStatistics statistics = new PipelineStageStatistics();
+        statistics.setSite(site);
+        statistics.setStage(name);
+        statistics.setWorkers(workers);
+        statistics.setQueueDepth(queueDepth.get());
+        statistics.setQueueCapacity(capacity);
+        statistics.setProcessed(count);
+        statistics.setThroughput(elapsedSeconds > 0 ? count / elapsedSeconds : 0);
+        statistics.setAverageMillis(count > 0 ? busyNanos.sum() / 1_000_000.0 / count : 0);
+        return statistics;
+    }
+
+    private void scheduleIfIdle() {
+        while (running && !queue.isEmpty()) {
+            int active = activeTasks.get();
+            if (active >= workers) {
+                return;
+            }
+            if (activeTasks.compareAndSet(active, active + 1)) {
+                executor.execute(siteKey, this::processNext);
+                return;
+            }
+        }
+    }
+
+    // Одна задача — один элемент: между элементами пул успевает переключиться на другие сайты
+    private void processNext() {
+        try {
+            T item = queue.poll();
+            if (item == null) {
+                return;
+            }
+            queueDepth.decrementAndGet();
+
+            long start = System.nanoTime();
+            try {
+                handler.accept(item);
+            } catch (Exception e) {
+                log.error("Ошибка на стадии {} для сайта {}: {}", name, site, e.getMessage(), e);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                busyNanos.add(elapsed);
+                timer.record(elapsed, TimeUnit.NANOSECONDS);
+                processed.increment();
+            }
+        } finally {
+            activeTasks.decrementAndGet();
+            scheduleIfIdle();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package searchengine.processors;
+
+import searchengine.config.CrawlerProperties;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Когда повторять загрузку страницы и через сколько. Повторяются временные сбои: сетевые ошибки, таймауты
+ * и коды из {@code crawler.retry.retry-statuses}. Пауза перед попыткой {@code n} выбирается случайно
+ * от 0 до {@code initial-backoff * 2^(n-1)}, но не больше {@code max-backoff}: повторы от многих страниц
+ * не приходят на сервер одновременно. Retry-After здесь не учитывается — его соблюдает {@link HostPolitenessScheduler}.
+ */
+public class RetryPolicy {
+
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final Set<Integer> retryStatuses;
+
+    public RetryPolicy(CrawlerProperties.Retry settings) {
+        this.maxAttempts = Math.max(1, settings.getMaxAttempts());
+        this.initialBackoffNanos = Math.max(0, settings.getInitialBackoff().toNanos());
+        this.maxBackoffNanos = Math.max(initialBackoffNanos, settings.getMaxBackoff().toNanos());
+        this.retryStatuses = Set.copyOf(settings.getRetryStatuses());
+    }
+
+    /**
+     * Пауза перед следующей попыткой в наносекундах или -1, если попытка {@code attempt} (с единицы)
+     * была последней или ошибка не временная.
+     */
+    public long retryDelayNanos(int attempt, FetchResult result, Throwable error) {
+        if (attempt >= maxAttempts || !isTransient(result, error)) {
+            return -1;
+        }
+        long ceiling = initialBackoffNanos << Math.min(attempt - 1, 30);
+        if (ceiling < 0 || ceiling > maxBackoffNanos) {
+            ceiling = maxBackoffNanos;
+        }
+        return ceiling == 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private boolean isTransient(FetchResult result, Throwable error) {
+        if (error == null) {
+            return result != null && retryStatuses.contains(result.getStatusCode());
+        }
+        // Ошибки загрузки приходят обёрнутыми в CompletionException и IndexingException; отмена — не сбой
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,188 @@
+package searchengine.processors;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Правила robots.txt для нашего user-agent: Allow/Disallow, Crawl-delay и ссылки на sitemap.
+ * Выбирается группа с самым длинным совпавшим токеном user-agent, иначе группа {@code *}.
+ * Из подходящих правил побеждает самое длинное, при равной длине — Allow; поддерживаются {@code *} и {@code $}.
+ */
+public class RobotsRules {
+
+    private static final RobotsRules ALLOW_ALL = new RobotsRules(List.of(), null, List.of());
+
+    private final List<Rule> rules;
+    private final Long crawlDelayMillis;
+    private final List<String> sitemaps;
+
+    private RobotsRules(List<Rule> rules, Long crawlDelayMillis, List<String> sitemaps) {
+        this.rules = rules;
+        this.crawlDelayMillis = crawlDelayMillis;
+        this.sitemaps = sitemaps;
+    }
+
+    public static RobotsRules allowAll() {
+        return ALLOW_ALL;
+    }
+
+    public static RobotsRules parse(String content, String userAgent) {
+        String agent = userAgent == null ? "" : userAgent.toLowerCase(Locale.ROOT);
+        List<String> sitemaps = new ArrayList<>();
+        List<Group> groups = new ArrayList<>();
+        Group current = null;
+        boolean readingAgents = false;
+
+        for (String rawLine : content.split("\\r?\\n|\\r")) {
+            String line = stripComment(rawLine);
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String field = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+
+            switch (field) {
+                case "user-agent" -> {
+                    // Подряд идущие строки User-agent относятся к одной группе
+                    if (current == null || !readingAgents) {
+                        current = new Group();
+                        groups.add(current);
+                    }
+                    current.agents.add(value.toLowerCase(Locale.ROOT));
+                    readingAgents = true;
+                }
+                case "allow", "disallow" -> {
+                    readingAgents = false;
+                    if (current != null && !value.isEmpty()) {
+                        current.rules.add(new Rule(value, field.equals("allow")));
+                    }
+                }
+                case "crawl-delay" -> {
+                    readingAgents = false;
+                    if (current != null) {
+                        current.crawlDelayMillis = parseDelay(value);
+                    }
+                }
+                case "sitemap" -> {
+                    if (!value.isEmpty()) {
+                        sitemaps.add(value);
+                    }
+                }
+                default -> readingAgents = false;
+            }
+        }
+
+        Group selected = selectGroup(groups, agent);
+        if (selected == null) {
+            return new RobotsRules(List.of(), null, List.copyOf(sitemaps));
+        }
+        return new RobotsRules(List.copyOf(selected.rules), selected.crawlDelayMillis, List.copyOf(sitemaps));
+    }
+
+    // Проверка полного URL: правила сравниваются с путём и строкой запроса
+    public boolean isAllowed(String url) {
+        if (rules.isEmpty()) {
+            return true;
+        }
+        String path;
+        try {
+            URI uri = URI.create(url);
+            path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            if (uri.getRawQuery() != null) {
+                path += "?" + uri.getRawQuery();
+            }
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+
+        Rule best = null;
+        for (Rule rule : rules) {
+            if (rule.matches(path) && (best == null || rule.length > best.length
+                    || (rule.length == best.length && rule.allow))) {
+                best = rule;
+            }
+        }
+        return best == null || best.allow;
+    }
+
+    public Long getCrawlDelayMillis() {
+        return crawlDelayMillis;
+    }
+
+    public List<String> getSitemaps() {
+        return sitemaps;
+    }
+
+    private static Group selectGroup(List<Group> groups, String agent) {
+        Group selected = null;
+        int selectedLength = -1;
+        Group wildcard = null;
+        for (Group group : groups) {
+            for (String token : group.agents) {
+                if (token.equals("*")) {
+                    if (wildcard == null) {
+                        wildcard = group;
+                    }
+                } else if (!token.isEmpty() && agent.contains(token) && token.length() > selectedLength) {
+                    selected = group;
+                    selectedLength = token.length();
+                }
+            }
+        }
+        return selected != null ? selected : wildcard;
+    }
+
+    private static String stripComment(String line) {
+        int hash = line.indexOf('#');
+        return hash >= 0 ? line.substring(0, hash) : line;
+    }
+
+    private static Long parseDelay(String value) {
+        try {
+            double seconds = Double.parseDouble(value);
+            return seconds > 0 ? Math.round(seconds * 1000) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static final class Group {
+        private final List<String> agents = new ArrayList<>();
+        private final List<Rule> rules = new ArrayList<>();
+        private Long crawlDelayMillis;
+    }
+
+    private static final class Rule {
+
+        private final Pattern pattern;
+        private final int length;
+        private final boolean allow;
+
+        Rule(String value, boolean allow) {
+            this.allow = allow;
+            this.length = value.length();
+
+            boolean anchored = value.endsWith("$");
+            String body = anchored ? value.substring(0, value.length() - 1) : value;
+            StringBuilder regex = new StringBuilder();
+            for (String part : body.split("\\*", -1)) {
+                if (regex.length() > 0) {
+                    regex.append(".*");
+                }
+                regex.append(Pattern.quote(part));
+            }
+            if (anchored) {
+                regex.append("$");
+            }
+            this.pattern = Pattern.compile(regex.toString());
+        }
+
+        boolean matches(String path) {
+            return pattern.matcher(path).lookingAt();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package searchengine.processors;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.repository.PageValidators;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Стадия загрузки конвейера обхода. Адрес из очереди ждёт слот {@link HostPolitenessScheduler},
+ * затем загружается через {@link PageFetcher#fetchAsync}, и готовый ответ передаётся в {@link CrawlPipeline}.
+ * Потоки не ждут сеть: медленные серверы держат лишь запросы в полёте, число которых ограничено
+ * {@code maxInFlight} и пределом, который {@link HostPolitenessScheduler} подстраивает по ответам хоста,
+ * а новые запросы не отправляются, пока в конвейере нет для них места.
+ * Временные сбои загрузки повторяются по {@link RetryPolicy}; повтор ждёт в таймере планировщика и не занимает поток.
+ * Обход заканчивается и раньше, когда исчерпан {@link CrawlBudget} или превышен {@link CrawlErrorBudget} сайта.
+ */
+@Slf4j
+public class SiteCrawler {
+
+    private final CrawlContext context;
+    private final HostPolitenessScheduler politenessScheduler;
+    private final CrawlPipeline pipeline;
+    private final int maxInFlight;
+    private final String host;
+    private final String siteKey;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    // Адреса, взятые из очереди, но ещё не сохранённые — попадают в контрольную точку наравне с очередью
+    private final Set<FrontierEntry> pagesInProgress = ConcurrentHashMap.newKeySet();
+    // Адреса, обработка которых прервана остановкой индексации
+    private final Queue<FrontierEntry> abandonedPages = new ConcurrentLinkedQueue<>();
+    // Адреса, до которых не дошла очередь из-за исчерпанного бюджета
+    private final Queue<FrontierEntry> overBudgetPages = new ConcurrentLinkedQueue<>();
+    private final LongAdder robotsDisallowed = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final CrawlBudget budget;
+    private final CrawlErrorBudget errorBudget;
+    private final RetryPolicy retryPolicy;
+
+    // Страницы, ожидающие слот или ответ сервера
+    private int pagesInFlight;
+    // Страницы, ответ на которые получен, но конвейер их ещё не сохранил
+    private int pagesInPipeline;
+
+    public SiteCrawler(CrawlContext context, HostPolitenessScheduler politenessScheduler, CrawlPipeline pipeline, int maxInFlight,
+                       CrawlBudget budget) {
+        this.context = context;
+        this.politenessScheduler = politenessScheduler;
+        this.pipeline = pipeline;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.budget = budget;
+        this.errorBudget = pipeline.getErrorBudget();
+        this.retryPolicy = new RetryPolicy(context.getCrawlerProperties().getRetry());
+        this.host = URI.create(context.getSite().getUrl()).getHost();
+        this.siteKey = context.getSite().getUrl();
+    }
+
+    // Запускает обход; возвращённый future завершается, когда очередь исчерпана или индексация остановлена
+    public CompletableFuture<Void> crawl() {
+        dispatch();
+        return completion;
+    }
+
+    // Адреса, которые ещё предстоит обработать: очередь, страницы в работе и прерванные остановкой
+    public List<FrontierEntry> pendingEntries() {
+        List<FrontierEntry> pending = new ArrayList<>(pagesInProgress);
+        pending.addAll(abandonedPages);
+        pending.addAll(overBudgetPages);
+        pending.addAll(context.getFrontier().snapshot());
+        return pending;
+    }
+
+    // Страницы, загрузка или обработка которых прервана остановкой индексации
+    public int getAbandonedCount() {
+        return abandonedPages.size();
+    }
+
+    public long getRobotsDisallowed() {
+        return robotsDisallowed.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    private synchronized void dispatch() {
+        // Место в конвейере резервируется под каждый запрос в полёте — ответ всегда примут без ожидания
+        int hostLimit = Math.min(maxInFlight, politenessScheduler.getConcurrencyLimit(host));
+        while (pagesInFlight < hostLimit && pagesInFlight + pagesInPipeline < pipeline.getCapacity()
+                && context.getIsIndexingRunning().get() && !budget.isExhausted() && !errorBudget.isExceeded()) {
+            FrontierEntry entry = context.getFrontier().poll();
+            if (entry == null) {
+                break;
+            }
+            // Одна проверка для всех источников адресов: ссылки, sitemap, контрольная точка, известные страницы
+            if (!context.getRobotsRules().isAllowed(entry.getUrl())) {
+                robotsDisallowed.increment();
+                continue;
+            }
+            if (!budget.tryAcquirePage()) {
+                overBudgetPages.add(entry);
+                break;
+            }
+            pagesInFlight++;
+            pagesInProgress.add(entry);
+            fetch(entry, context.getKnownPages().get(entry.getPath()), 1, politenessScheduler.acquire(host));
+        }
+
+        boolean exhausted = context.getFrontier().isEmpty() || !context.getIsIndexingRunning().get() || budget.isExhausted()
+                || errorBudget.isExceeded();
+        if (pagesInFlight == 0 && pagesInPipeline == 0 && exhausted) {
+            completion.complete(null);
+        }
+    }
+
+    // Попытка загрузки номер attempt; временный сбой ставит следующую попытку, остальные исходы уходят в конвейер
+    private void fetch(FrontierEntry entry, PageValidators knownPage, int attempt, CompletableFuture<Void> permit) {
+        long requestedAt = System.nanoTime();
+        long[] sentAt = new long[1];
+        permit.thenCompose(ignored -> {
+                    sentAt[0] = System.nanoTime();
+                    context.getCrawlMetrics().recordPolitenessWait(siteKey, sentAt[0] - requestedAt);
+                    return knownPage == null
+                            ? context.getPageFetcher().fetchAsync(entry.getUrl(), null, null, siteKey)
+                            : context.getPageFetcher().fetchAsync(entry.getUrl(), knownPage.getEtag(), knownPage.getLastModified(), siteKey);
+                })
+                .whenComplete((result, error) -> {
+                    if (sentAt[0] != 0) {
+                        context.getCrawlMetrics().recordFetch(siteKey, result, error, System.nanoTime() - sentAt[0]);
+                        politenessScheduler.onResponse(host, sentAt[0], result, error);
+                    }
+                    long retryDelay = context.getIsIndexingRunning().get() ? retryPolicy.retryDelayNanos(attempt, result, error) : -1;
+                    if (retryDelay >= 0) {
+                        retries.increment();
+                        context.getCrawlMetrics().recordRetry(siteKey);
+                        log.debug("Повтор загрузки {} (попытка {}) через {} мс", entry.getUrl(), attempt + 1, retryDelay / 1_000_000);
+                        fetch(entry, knownPage, attempt + 1, politenessScheduler.acquireAfter(host, retryDelay));
+                        return;
+                    }
+                    onPageFetched(entry, knownPage, result, error);
+                });
+    }
+
+    private void onPageFetched(FrontierEntry entry, PageValidators knownPage, FetchResult result, Throwable error) {
+        synchronized (this) {
+            pagesInFlight--;
+            pagesInPipeline++;
+        }
+        pipeline.submit(new CrawledPage(entry, knownPage, result, error, () -> onPageProcessed(entry)));
+    }
+
+    private void onPageProcessed(FrontierEntry entry) {
+        if (!context.getIsIndexingRunning().get()) {
+            // После остановки конвейер страницу не сохраняет; уже сохранённые отсеются при возобновлении
+            abandonedPages.add(entry);
+        }
+        pagesInProgress.remove(entry);
+        synchronized (this) {
+            pagesInPipeline--;
+        }
+        dispatch();
+    }
+}
@@ -0,0 +1,20 @@
+package searchengine.processors;
+
+import lombok.Getter;
+
+import java.time.Instant;
+
+// Адрес из sitemap с датой последнего изменения и приоритетом, если они указаны
+@Getter
+public class SitemapUrl {
+
+    private final String url;
+    private final Instant lastModified;
+    private final Double priority;
+
+    public SitemapUrl(String url, Instant lastModified, Double priority) {
+        this.url = url;
+        this.lastModified = lastModified;
+        this.priority = priority;
+    }
+}
@@ -7,8 +7,6 @@ import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Component
@@ -80,10 +78,9 @@ public class TextAnalyzer {
         return lemmas;
     }
 
-    // Строит сниппет — отрывок с выделением совпавших лемм
-    public String buildSnippet(String htmlContent, List<String> queryLemmas) {
-        String text = clearHtml(htmlContent);
-        if(text.isBlank()) return "";
+    // Строит сниппет — отрывок с выделением совпавших лемм; текст уже очищен от разметки при индексации
+    public String buildSnippet(String text, List<String> queryLemmas) {
+        if (text == null || text.isBlank()) return "";
 
         // Разбиваем на слова
         String[] words = text.split("\\s+");
@@ -167,19 +164,6 @@ public class TextAnalyzer {
         return false;
     }
 
-    // Очищает HTML от тегов
-    public String clearHtml(String htmlContent) {
-        if (htmlContent == null) return "";
-        return htmlContent.replaceAll("<[^>]+>", "").replaceAll("\\s+", " ").trim();
-    }
-
-    // 🔹 Извлекает <title> страницы
-    public String extractTitle(String htmlContent) {
-        if (htmlContent == null) return "";
-        Matcher matcher = Pattern.compile("<title>(.*?)</title>", Pattern.CASE_INSENSITIVE).matcher(htmlContent);
-        return matcher.find() ? matcher.group(1).trim() : "";
-    }
-
     // Проверка служебных слов
     private boolean isServiceWord(List<String> wordBaseForms) {
         return wordBaseForms.stream()
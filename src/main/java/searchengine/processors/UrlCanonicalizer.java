@@ -0,0 +1,209 @@
+package searchengine.processors;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerProperties;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Единые правила приведения адресов к каноническому виду для обхода, sitemap и индексации одной страницы.
+ * Одна и та же страница, записанная по-разному ({@code ../}, фрагмент, порт по умолчанию, регистр хоста,
+ * служебные параметры запроса, а при {@code strip-trailing-slash} и завершающий слэш), даёт один ключ и загружается один раз.
+ */
+@Component
+public class UrlCanonicalizer {
+
+    // Совпадает с длиной столбца page.path: более длинные адреса сохранить всё равно нельзя
+    public static final int MAX_PATH_LENGTH = 255;
+
+    private static final Pattern PERCENT_ESCAPE = Pattern.compile("%[0-9a-fA-F]{2}");
+    private static final Pattern SESSION_SEGMENT = Pattern.compile(";jsessionid=[^/?]*", Pattern.CASE_INSENSITIVE);
+
+    private final CrawlerProperties.Canonicalization settings;
+
+    public UrlCanonicalizer(CrawlerProperties crawlerProperties) {
+        this.settings = crawlerProperties.getCanonicalization();
+    }
+
+    // Ссылка со страницы, разрешённая относительно её адреса
+    public String canonicalize(String baseUrl, String href) {
+        if (href == null || href.isBlank()) {
+            return null;
+        }
+        try {
+            return canonicalize(toUri(baseUrl).resolve(toUri(href.trim())).toString());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Канонический абсолютный адрес или null, если это не http(s)-адрес или его нельзя разобрать
+    public String canonicalize(String url) {
+        if (url == null || url.isBlank()) {
+            return null;
+        }
+        URI uri;
+        try {
+            uri = toUri(url.trim());
+        } catch (URISyntaxException e) {
+            return null;
+        }
+
+        String scheme = uri.getScheme() == null ? null : uri.getScheme().toLowerCase(Locale.ROOT);
+        if (!"http".equals(scheme) && !"https".equals(scheme) || uri.getHost() == null) {
+            return null;
+        }
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        int port = uri.getPort();
+        if (port == 80 && scheme.equals("http") || port == 443 && scheme.equals("https")) {
+            port = -1;
+        }
+
+        StringBuilder canonical = new StringBuilder(scheme).append("://").append(host);
+        if (port != -1) {
+            canonical.append(':').append(port);
+        }
+        canonical.append(normalizePath(uri.getRawPath()));
+        String query = normalizeQuery(uri.getRawQuery());
+        if (query != null) {
+            canonical.append('?').append(query);
+        }
+        return canonical.toString();
+    }
+
+    /**
+     * Путь страницы от корня сайта вместе с канонической строкой запроса — ключ страницы в очереди и в таблице page.
+     * Возвращает null для адресов другого сайта, вне его базового пути и слишком длинных.
+     */
+    public String toPath(String url, String siteUrl) {
+        String canonicalUrl = canonicalize(url);
+        String canonicalSite = canonicalize(siteUrl);
+        if (canonicalUrl == null || canonicalSite == null) {
+            return null;
+        }
+        URI uri = URI.create(canonicalUrl);
+        URI site = URI.create(canonicalSite);
+        if (!uri.getHost().equals(site.getHost()) || uri.getPort() != site.getPort()) {
+            return null;
+        }
+
+        String basePath = site.getRawPath().endsWith("/") ? site.getRawPath() : site.getRawPath() + "/";
+        String path = uri.getRawPath();
+        if (!(path + "/").startsWith(basePath)) {
+            return null;
+        }
+        String relativePath = "/" + (path.length() > basePath.length() ? path.substring(basePath.length()) : "");
+        if (uri.getRawQuery() != null) {
+            relativePath += "?" + uri.getRawQuery();
+        }
+        return relativePath.length() > MAX_PATH_LENGTH ? null : relativePath;
+    }
+
+    public boolean isSameSite(String url, String siteUrl) {
+        return toPath(url, siteUrl) != null;
+    }
+
+    private String normalizePath(String rawPath) {
+        if (rawPath == null || rawPath.isEmpty()) {
+            return "/";
+        }
+        String path = SESSION_SEGMENT.matcher(rawPath).replaceAll("");
+        path = upperCaseEscapes(path).replaceAll("/{2,}", "/");
+
+        // Убираем сегменты "." и "..", которые resolve оставляет в абсолютных ссылках
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : path.split("/", -1)) {
+            if (segment.equals(".")) {
+                continue;
+            }
+            if (segment.equals("..")) {
+                segments.pollLast();
+                continue;
+            }
+            segments.addLast(segment);
+        }
+        StringBuilder normalized = new StringBuilder();
+        for (String segment : segments) {
+            if (!segment.isEmpty()) {
+                normalized.append('/').append(segment);
+            }
+        }
+        if (!settings.isStripTrailingSlash() && path.endsWith("/") && normalized.length() > 0) {
+            normalized.append('/');
+        }
+        return normalized.length() == 0 ? "/" : normalized.toString();
+    }
+
+    // Служебные параметры (метки рекламы, идентификаторы сессий) убираются, остальные сортируются
+    private String normalizeQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty() || settings.isIgnoreQuery()) {
+            return null;
+        }
+        List<String> parameters = new ArrayList<>();
+        for (String parameter : rawQuery.split("&")) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            String name = parameter.split("=", 2)[0].toLowerCase(Locale.ROOT);
+            if (!isIgnoredParameter(name)) {
+                parameters.add(upperCaseEscapes(parameter));
+            }
+        }
+        if (parameters.isEmpty()) {
+            return null;
+        }
+        parameters.sort(null);
+        return String.join("&", parameters);
+    }
+
+    private boolean isIgnoredParameter(String name) {
+        for (String pattern : settings.getIgnoredQueryParams()) {
+            String rule = pattern.toLowerCase(Locale.ROOT);
+            if (rule.endsWith("*") ? name.startsWith(rule.substring(0, rule.length() - 1)) : name.equals(rule)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String upperCaseEscapes(String value) {
+        Matcher matcher = PERCENT_ESCAPE.matcher(value);
+        StringBuilder result = new StringBuilder();
+        while (matcher.find()) {
+            matcher.appendReplacement(result, matcher.group().toUpperCase(Locale.ROOT));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    // Пробелы и кириллица в ссылках встречаются часто: URI(String) их не принимает, поэтому кодируем заранее
+    private static URI toUri(String value) throws URISyntaxException {
+        try {
+            return new URI(value);
+        } catch (URISyntaxException e) {
+            StringBuilder encoded = new StringBuilder();
+            value.codePoints().forEach(codePoint -> {
+                if (codePoint > 127 || " |\"<>`{}\\^".indexOf(codePoint) >= 0) {
+                    for (byte b : new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8)) {
+                        encoded.append('%').append(String.format("%02X", b & 0xff));
+                    }
+                } else {
+                    encoded.appendCodePoint(codePoint);
+                }
+            });
+            return new URI(encoded.toString());
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package searchengine.processors;
+
+import searchengine.config.CrawlerProperties;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Общая для всего обхода сайта очередь адресов. Дубликаты отсекаются по отпечаткам
+ * в {@link VisitedUrlSet} за O(1) без обращения к базе данных.
+ * Необязательный фильтр Блума стоит перед точным множеством и сразу отправляет заведомо новые адреса на вставку.
+ *
+ * <p>Адреса выдаются по убыванию ценности: меньшая глубина ссылок, приоритет и свежесть из sitemap,
+ * больше входящих ссылок. Повторная ссылка на адрес, ещё ждущий в очереди, уменьшает его глубину
+ * до минимальной и увеличивает число входящих ссылок. Вместо перестройки кучи в неё добавляется
+ * новая запись, а устаревшие пропускаются при выдаче; из-за логарифмической шкалы входящих ссылок
+ * запись обновляется не чаще, чем их число удваивается.
+ */
+public class UrlFrontier {
+
+    private static final Comparator<QueuedUrl> BEST_FIRST = Comparator
+            .comparingDouble((QueuedUrl queued) -> queued.score).reversed()
+            .thenComparingLong(queued -> queued.url.sequence);
+
+    private final PriorityQueue<QueuedUrl> queue = new PriorityQueue<>(BEST_FIRST);
+    // Ожидающие адреса по ключу: по ним учитываются повторные ссылки
+    private final Map<String, PendingUrl> pending = new HashMap<>();
+    private final VisitedUrlSet visited;
+    private final BloomFilter bloomFilter;
+    private final CrawlerProperties.Frontier settings;
+    private long sequence;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder duplicatesSuppressed = new LongAdder();
+    private final LongAdder bloomNegatives = new LongAdder();
+
+    public UrlFrontier(CrawlerProperties.Frontier settings) {
+        this.settings = settings;
+        this.visited = new VisitedUrlSet(settings.getExpectedUrls());
+        this.bloomFilter = settings.isBloomFilterEnabled()
+                ? new BloomFilter(settings.getExpectedUrls(), settings.getBloomFalsePositiveRate()) : null;
+    }
+
+    // Добавляет адрес в очередь, если его ключ (относительный путь страницы) ещё не встречался при этом обходе
+    public boolean offer(String key, String url, int depth) {
+        return offer(key, url, depth, null, null);
+    }
+
+    // Адрес из sitemap: приоритет (0..1) и дата изменения повышают его место в очереди
+    public boolean offer(String key, String url, int depth, Double sitemapPriority, Instant lastModified) {
+        if (!markVisited(key)) {
+            duplicatesSuppressed.increment();
+            relink(key, depth);
+            return false;
+        }
+        synchronized (this) {
+            PendingUrl pendingUrl = new PendingUrl(key, url, depth, sitemapPriority, lastModified, sequence++);
+            pending.put(key, pendingUrl);
+            push(pendingUrl);
+        }
+        enqueued.increment();
+        return true;
+    }
+
+    // Отмечает ключ посещённым без постановки в очередь; false — ключ уже встречался
+    public boolean markVisited(String key) {
+        long fingerprint = VisitedUrlSet.fingerprint(key);
+
+        if (bloomFilter != null) {
+            boolean maybeSeen = bloomFilter.mightContain(fingerprint);
+            bloomFilter.put(fingerprint);
+            if (!maybeSeen) {
+                // Фильтр гарантирует, что адрес новый: пропускаем предварительную проверку точного множества
+                bloomNegatives.increment();
+                return visited.insert(fingerprint);
+            }
+        }
+        return visited.add(fingerprint);
+    }
+
+    public boolean isVisited(String key) {
+        long fingerprint = VisitedUrlSet.fingerprint(key);
+        if (bloomFilter != null && !bloomFilter.mightContain(fingerprint)) {
+            return false;
+        }
+        return visited.contains(fingerprint);
+    }
+
+    // Самый ценный из ожидающих адресов или null, если очередь пуста
+    public synchronized FrontierEntry poll() {
+        QueuedUrl queued;
+        while ((queued = queue.poll()) != null) {
+            PendingUrl pendingUrl = queued.url;
+            if (queued.version != pendingUrl.version || pending.get(pendingUrl.key) != pendingUrl) {
+                continue;
+            }
+            pending.remove(pendingUrl.key);
+            return new FrontierEntry(pendingUrl.key, pendingUrl.url, pendingUrl.depth);
+        }
+        return null;
+    }
+
+    // Снимок ожидающих адресов для контрольной точки
+    public synchronized List<FrontierEntry> snapshot() {
+        List<FrontierEntry> entries = new ArrayList<>(pending.size());
+        pending.values().forEach(pendingUrl -> entries.add(new FrontierEntry(pendingUrl.key, pendingUrl.url, pendingUrl.depth)));
+        return entries;
+    }
+
+    public synchronized boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    public long getVisitedCount() {
+        return visited.size();
+    }
+
+    public long getEnqueuedCount() {
+        return enqueued.sum();
+    }
+
+    public long getDuplicatesSuppressed() {
+        return duplicatesSuppressed.sum();
+    }
+
+    public long getBloomNegatives() {
+        return bloomNegatives.sum();
+    }
+
+    // Ещё одна ссылка на адрес, который ждёт в очереди: глубина — минимальная из найденных
+    private synchronized void relink(String key, int depth) {
+        PendingUrl pendingUrl = pending.get(key);
+        if (pendingUrl == null) {
+            return;
+        }
+        int previousScale = inboundScale(pendingUrl.inboundLinks);
+        pendingUrl.inboundLinks++;
+        boolean changed = inboundScale(pendingUrl.inboundLinks) != previousScale;
+        if (depth < pendingUrl.depth) {
+            pendingUrl.depth = depth;
+            changed = true;
+        }
+        if (changed) {
+            push(pendingUrl);
+        }
+    }
+
+    private void push(PendingUrl pendingUrl) {
+        pendingUrl.version++;
+        queue.add(new QueuedUrl(pendingUrl, pendingUrl.version, score(pendingUrl)));
+    }
+
+    private double score(PendingUrl pendingUrl) {
+        double score = -settings.getDepthWeight() * pendingUrl.depth
+                + settings.getInboundLinksWeight() * inboundScale(pendingUrl.inboundLinks);
+        if (pendingUrl.sitemapPriority != null) {
+            score += settings.getSitemapPriorityWeight() * pendingUrl.sitemapPriority;
+        }
+        if (pendingUrl.lastModified != null) {
+            // 1 для страницы, изменённой сегодня, 0.5 — месяц назад, дальше плавно к нулю
+            double ageDays = Math.max(0, Duration.between(pendingUrl.lastModified, Instant.now()).toHours() / 24.0);
+            score += settings.getFreshnessWeight() / (1 + ageDays / 30);
+        }
+        return score;
+    }
+
+    private static int inboundScale(int inboundLinks) {
+        return 31 - Integer.numberOfLeadingZeros(inboundLinks + 1);
+    }
+
+    private static final class PendingUrl {
+        private final String key;
+        private final String url;
+        private final Double sitemapPriority;
+        private final Instant lastModified;
+        private final long sequence;
+        private int depth;
+        private int inboundLinks;
+        private int version;
+
+        private PendingUrl(String key, String url, int depth, Double sitemapPriority, Instant lastModified, long sequence) {
+            this.key = key;
+            this.url = url;
+            this.depth = depth;
+            this.sitemapPriority = sitemapPriority;
+            this.lastModified = lastModified;
+            this.sequence = sequence;
+        }
+    }
+
+    // Запись кучи: оценка зафиксирована на момент добавления, устаревшие версии пропускаются в poll
+    private static final class QueuedUrl {
+        private final PendingUrl url;
+        private final int version;
+        private final double score;
+
+        private QueuedUrl(PendingUrl url, int version, double score) {
+            this.url = url;
+            this.version = version;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package searchengine.processors;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Компактное множество уже встреченных URL. Вместо строк хранятся 64-битные отпечатки
+ * в открытой адресации (8 байт на адрес), таблица разбита на сегменты,
+ * поэтому потоки разных сегментов не мешают друг другу. Чтение идёт без блокировок.
+ */
+public class VisitedUrlSet {
+
+    private static final int SEGMENT_COUNT = 64;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    public VisitedUrlSet(int expectedUrls) {
+        int perSegment = Math.max(16, (int) (expectedUrls / SEGMENT_COUNT / LOAD_FACTOR));
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    // 64-битный отпечаток URL (FNV-1a по UTF-8 байтам с финальным перемешиванием)
+    public static long fingerprint(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : url.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        // 0 зарезервирован под пустую ячейку
+        return hash == 0 ? 1 : hash;
+    }
+
+    public boolean contains(long fingerprint) {
+        return segmentFor(fingerprint).contains(fingerprint);
+    }
+
+    // Возвращает true, если отпечаток добавлен впервые
+    public boolean add(long fingerprint) {
+        Segment segment = segmentFor(fingerprint);
+        if (segment.contains(fingerprint)) {
+            return false;
+        }
+        return segment.add(fingerprint);
+    }
+
+    // Вставка без предварительной проверки без блокировки — когда отпечаток заведомо новый
+    public boolean insert(long fingerprint) {
+        return segmentFor(fingerprint).add(fingerprint);
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    private Segment segmentFor(long fingerprint) {
+        return segments[(int) (fingerprint >>> 58) & (SEGMENT_COUNT - 1)];
+    }
+
+    private static final class Segment {
+
+        private volatile long[] table;
+        private volatile int size;
+
+        Segment(int capacity) {
+            this.table = new long[Integer.highestOneBit(capacity - 1) << 1];
+        }
+
+        boolean contains(long fingerprint) {
+            long[] current = table;
+            int mask = current.length - 1;
+            int index = (int) fingerprint & mask;
+            while (true) {
+                long value = current[index];
+                if (value == fingerprint) {
+                    return true;
+                }
+                if (value == 0) {
+                    return false;
+                }
+                index = (index + 1) & mask;
+            }
+        }
+
+        synchronized boolean add(long fingerprint) {
+            long[] current = table;
+            if (!insert(current, fingerprint)) {
+                return false;
+            }
+            int newSize = size + 1;
+            if (newSize > current.length * LOAD_FACTOR) {
+                long[] resized = new long[current.length << 1];
+                for (long value : current) {
+                    if (value != 0) {
+                        insert(resized, value);
+                    }
+                }
+                table = resized;
+            }
+            size = newSize;
+            return true;
+        }
+
+        private static boolean insert(long[] target, long fingerprint) {
+            int mask = target.length - 1;
+            int index = (int) fingerprint & mask;
+            while (target[index] != 0) {
+                if (target[index] == fingerprint) {
+                    return false;
+                }
+                index = (index + 1) & mask;
+            }
+            target[index] = fingerprint;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package searchengine.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import searchengine.model.CrawlCheckpointModel;
+import searchengine.model.SiteModel;
+
+import java.util.Optional;
+
+public interface CrawlCheckpointRepository extends JpaRepository<CrawlCheckpointModel, Integer> {
+
+    Optional<CrawlCheckpointModel> findBySite(SiteModel site);
+}
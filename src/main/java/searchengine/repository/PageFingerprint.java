@@ -0,0 +1,9 @@
+package searchengine.repository;
+
+// Проекция страницы для поиска копий: путь и SimHash текста
+public interface PageFingerprint {
+
+    String getPath();
+
+    Long getSimhash();
+}
@@ -2,6 +2,7 @@ package searchengine.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import searchengine.config.Site;
@@ -30,6 +31,20 @@ public interface PageRepository extends JpaRepository<PageModel, Integer> {
 
     void deleteAllBySiteModel(SiteModel siteModel);
 
+    List<PageValidators> findValidatorsBySiteModel(SiteModel siteModel);
+
+    // Отпечатки страниц-оригиналов: копии с duplicate_of в поиске копий не участвуют
+    @Query("select p.path as path, p.simhash as simhash from PageModel p " +
+            "where p.siteModel = :siteModel and p.simhash is not null and p.duplicateOf is null")
+    List<PageFingerprint> findFingerprintsBySiteModel(@Param("siteModel") SiteModel siteModel);
+
+    @Query("select max(p.id) from PageModel p where p.siteModel = :siteModel")
+    Integer findMaxIdBySiteModel(@Param("siteModel") SiteModel siteModel);
+
+    @Modifying
+    @Query("update PageModel p set p.etag = :etag, p.lastModified = :lastModified, p.contentHash = :contentHash where p.id = :id")
+    void updateValidators(@Param("id") Integer id, @Param("etag") String etag,
+                          @Param("lastModified") String lastModified, @Param("contentHash") String contentHash);
 
 
 }
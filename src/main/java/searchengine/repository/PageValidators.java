@@ -0,0 +1,15 @@
+package searchengine.repository;
+
+// Проекция страницы без содержимого: всё, что нужно для условного повторного обхода
+public interface PageValidators {
+
+    Integer getId();
+
+    String getPath();
+
+    String getEtag();
+
+    String getLastModified();
+
+    String getContentHash();
+}
@@ -0,0 +1,23 @@
+package searchengine.services;
+
+import searchengine.model.CrawlCheckpointModel;
+import searchengine.model.SiteModel;
+import searchengine.processors.FrontierEntry;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Supplier;
+
+public interface CrawlCheckpointService {
+
+    void saveCheckpoint(SiteModel site, List<FrontierEntry> pendingUrls);
+
+    Optional<CrawlCheckpointModel> findCheckpoint(SiteModel site);
+
+    List<FrontierEntry> loadPendingUrls(SiteModel site);
+
+    void clearCheckpoint(SiteModel site);
+
+    ScheduledFuture<?> schedulePeriodicCheckpoint(SiteModel site, Supplier<List<FrontierEntry>> pendingUrls);
+}
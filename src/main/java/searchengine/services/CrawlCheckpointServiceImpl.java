@@ -0,0 +1,116 @@
+package searchengine.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.CrawlerProperties;
+import searchengine.model.CrawlCheckpointModel;
+import searchengine.model.SiteModel;
+import searchengine.processors.FrontierEntry;
+import searchengine.repository.CrawlCheckpointRepository;
+import searchengine.repository.PageRepository;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Контрольные точки обхода в таблицах {@code crawl_checkpoint} и {@code crawl_checkpoint_url}.
+ * Снимок очереди перезаписывается целиком в одной транзакции пакетной вставкой JDBC,
+ * поэтому после сбоя в базе всегда лежит последняя полностью сохранённая точка.
+ */
+@Service
+@Slf4j
+public class CrawlCheckpointServiceImpl implements CrawlCheckpointService {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final CrawlCheckpointRepository checkpointRepository;
+    private final PageRepository pageRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CrawlerProperties crawlerProperties;
+    private final ScheduledExecutorService timer;
+
+    public CrawlCheckpointServiceImpl(CrawlCheckpointRepository checkpointRepository, PageRepository pageRepository,
+                                      JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                      CrawlerProperties crawlerProperties) {
+        this.checkpointRepository = checkpointRepository;
+        this.pageRepository = pageRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.crawlerProperties = crawlerProperties;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "crawl-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public synchronized void saveCheckpoint(SiteModel site, List<FrontierEntry> pendingUrls) {
+        // Id последней страницы берём до снимка: всё, что сохранено позже, при возобновлении будет перепроверено
+        Integer lastPageId = pageRepository.findMaxIdBySiteModel(site);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM crawl_checkpoint_url WHERE site_id = ?", site.getId());
+            jdbcTemplate.update("DELETE FROM crawl_checkpoint WHERE site_id = ?", site.getId());
+            jdbcTemplate.update("INSERT INTO crawl_checkpoint (site_id, last_page_id, pending_urls, saved_at) VALUES (?, ?, ?, ?)",
+                    site.getId(), lastPageId, pendingUrls.size(), Timestamp.valueOf(LocalDateTime.now()));
+            jdbcTemplate.batchUpdate("INSERT INTO crawl_checkpoint_url (site_id, path, url, depth) VALUES (?, ?, ?, ?)",
+                    pendingUrls, BATCH_SIZE, (statement, entry) -> {
+                        statement.setInt(1, site.getId());
+                        statement.setString(2, entry.getPath());
+                        statement.setString(3, entry.getUrl());
+                        statement.setInt(4, entry.getDepth());
+                    });
+        });
+        log.info("Контрольная точка {}: в очереди {} адресов, последняя страница {}", site.getUrl(), pendingUrls.size(), lastPageId);
+    }
+
+    @Override
+    public Optional<CrawlCheckpointModel> findCheckpoint(SiteModel site) {
+        return checkpointRepository.findBySite(site);
+    }
+
+    @Override
+    public List<FrontierEntry> loadPendingUrls(SiteModel site) {
+        return jdbcTemplate.query("SELECT path, url, depth FROM crawl_checkpoint_url WHERE site_id = ? ORDER BY id",
+                (resultSet, rowNum) -> new FrontierEntry(resultSet.getString("path"), resultSet.getString("url"), resultSet.getInt("depth")),
+                site.getId());
+    }
+
+    @Override
+    public void clearCheckpoint(SiteModel site) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM crawl_checkpoint_url WHERE site_id = ?", site.getId());
+            jdbcTemplate.update("DELETE FROM crawl_checkpoint WHERE site_id = ?", site.getId());
+        });
+    }
+
+    @Override
+    public ScheduledFuture<?> schedulePeriodicCheckpoint(SiteModel site, Supplier<List<FrontierEntry>> pendingUrls) {
+        long interval = Math.max(1, crawlerProperties.getCheckpoint().getIntervalSeconds());
+        return timer.scheduleWithFixedDelay(() -> {
+            try {
+                saveCheckpoint(site, pendingUrls.get());
+            } catch (Exception e) {
+                log.warn("Не удалось сохранить контрольную точку {}: {}", site.getUrl(), e.getMessage());
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+}
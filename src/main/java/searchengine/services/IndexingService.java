@@ -1,6 +1,9 @@
 package searchengine.services;
 
+import searchengine.dto.statistics.PipelineStageStatistics;
+
 import java.net.MalformedURLException;
+import java.util.List;
 import java.util.Map;
 
 public interface IndexingService {
@@ -9,4 +12,5 @@ public interface IndexingService {
     void startIndexing() throws InterruptedException;
     Map<String, Object> stopIndexing();
     void indexPage(String url) throws Exception;
+    List<PipelineStageStatistics> getPipelineStatistics();
 }
@@ -1,27 +1,50 @@
 package searchengine.services;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 import searchengine.config.CrawlerProperties;
 import searchengine.config.CrawlerSettings;
 import searchengine.config.Site;
 import searchengine.config.SitesList;
+import searchengine.dto.statistics.PipelineStageStatistics;
 import searchengine.exceptions.IndexingAlreadyRunningException;
+import searchengine.exceptions.IndexingException;
+import searchengine.model.CrawlCheckpointModel;
 import searchengine.model.PageModel;
 import searchengine.model.SiteModel;
 import searchengine.model.enums.IndexStatus;
-import searchengine.processors.PageProcessorTask;
+import searchengine.processors.CrawlBudget;
+import searchengine.processors.CrawlContext;
+import searchengine.processors.CrawlErrorBudget;
+import searchengine.processors.CrawlExecutor;
+import searchengine.processors.CrawlMetrics;
+import searchengine.processors.CrawlPipeline;
+import searchengine.processors.ContentFingerprint;
+import searchengine.processors.CrawlSeeder;
+import searchengine.processors.DuplicateIndex;
+import searchengine.processors.FetchResult;
+import searchengine.processors.FrontierEntry;
+import searchengine.processors.HostPolitenessScheduler;
+import searchengine.processors.HtmlPageParser;
+import searchengine.processors.LemmaCache;
+import searchengine.processors.LemmaFrequencyCounter;
+import searchengine.processors.PageFetcher;
+import searchengine.processors.PageWriteBuffer;
+import searchengine.processors.ParsedPage;
+import searchengine.processors.RobotsRules;
+import searchengine.processors.SiteCrawler;
+import searchengine.processors.TextAnalyzer;
+import searchengine.processors.UrlCanonicalizer;
+import searchengine.processors.UrlFrontier;
+import searchengine.repository.PageFingerprint;
 import searchengine.repository.PageRepository;
+import searchengine.repository.PageValidators;
 import searchengine.repository.SiteRepository;
 
 
 import javax.transaction.Transactional;
-import java.io.IOException;
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.*;
@@ -31,24 +54,52 @@ import java.util.concurrent.atomic.AtomicBoolean;
 @Slf4j
 public class IndexingServiceImpl implements IndexingService{
 
+    private static final String STOPPED_BY_USER = "Индексация остановлена пользователем";
+
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
-    private final HttpClient httpClient;
+    private final PageFetcher pageFetcher;
+    private final HostPolitenessScheduler politenessScheduler;
+    private final TextAnalyzer textAnalyzer;
+    private final Map<String, CrawlPipeline> activePipelines = new ConcurrentHashMap<>();
+    private final Map<String, SiteCrawler> activeCrawlers = new ConcurrentHashMap<>();
+    // Обходы сайтов текущего запуска: остановка ждёт их завершения
+    private final List<CompletableFuture<Void>> runningSiteCrawls = new CopyOnWriteArrayList<>();
     private final CrawlerSettings crawlerSettings;
     private final CrawlerProperties crawlerProperties;
     private final SitesList sitesList;
     private final LemmaService lemmaService;
+    private final CrawlCheckpointService checkpointService;
+    private final CrawlSeeder crawlSeeder;
+    private final UrlCanonicalizer urlCanonicalizer;
+    private final CrawlExecutor crawlExecutor;
+    private final CrawlMetrics crawlMetrics;
+    private final LemmaCache lemmaCache;
+    private final LemmaFrequencyCounter frequencyCounter;
+    private final SitePurgeService sitePurgeService;
+    private final PageWriteBuffer pageWriteBuffer;
     private final AtomicBoolean isIndexingRunning = new AtomicBoolean(false);
 
 
-    public IndexingServiceImpl(SiteRepository siteRepository, PageRepository pageRepository, CrawlerSettings crawlerSettings, CrawlerProperties crawlerProperties, SitesList sitesList, LemmaService lemmaService) {
+    public IndexingServiceImpl(SiteRepository siteRepository, PageRepository pageRepository, CrawlerSettings crawlerSettings, CrawlerProperties crawlerProperties, SitesList sitesList, LemmaService lemmaService, PageFetcher pageFetcher, HostPolitenessScheduler politenessScheduler, TextAnalyzer textAnalyzer, CrawlCheckpointService checkpointService, CrawlSeeder crawlSeeder, UrlCanonicalizer urlCanonicalizer, CrawlExecutor crawlExecutor, CrawlMetrics crawlMetrics, LemmaCache lemmaCache, LemmaFrequencyCounter frequencyCounter, SitePurgeService sitePurgeService, PageWriteBuffer pageWriteBuffer) {
         this.siteRepository = siteRepository;
         this.pageRepository = pageRepository;
         this.crawlerSettings = crawlerSettings;
         this.crawlerProperties = crawlerProperties;
         this.sitesList = sitesList;
         this.lemmaService = lemmaService;
-        this.httpClient = HttpClient.newHttpClient();
+        this.pageFetcher = pageFetcher;
+        this.politenessScheduler = politenessScheduler;
+        this.textAnalyzer = textAnalyzer;
+        this.checkpointService = checkpointService;
+        this.crawlSeeder = crawlSeeder;
+        this.urlCanonicalizer = urlCanonicalizer;
+        this.crawlExecutor = crawlExecutor;
+        this.crawlMetrics = crawlMetrics;
+        this.lemmaCache = lemmaCache;
+        this.frequencyCounter = frequencyCounter;
+        this.sitePurgeService = sitePurgeService;
+        this.pageWriteBuffer = pageWriteBuffer;
     }
 
     @Override
@@ -70,57 +121,138 @@ public class IndexingServiceImpl implements IndexingService{
 
         try {
             List<Site> configSite = sitesList.getSites();
-            List<Thread> threads = startIndexingForSites(configSite);
-            waitForThreadsToFinish(threads);
+            List<CompletableFuture<Void>> siteCrawls = startIndexingForSites(configSite);
+            runningSiteCrawls.addAll(siteCrawls);
+            waitForSitesToFinish(siteCrawls);
             log.info("Индексация завершена.");
         } finally {
+            runningSiteCrawls.clear();
             isIndexingRunning.set(false);
         }
     }
 
-    // Запуск потоков для сайтов
-    private List<Thread> startIndexingForSites(List<Site> configSites) {
-        List<Thread> threads = new ArrayList<>();
+    // Запуск обхода сайтов в общем пуле: своих потоков у сайтов нет, доли пула задаются весами
+    private List<CompletableFuture<Void>> startIndexingForSites(List<Site> configSites) {
+        List<CompletableFuture<Void>> siteCrawls = new ArrayList<>();
 
         for (Site configSite : configSites) {
-            Thread thread = new Thread(() -> handleSiteIndexing(configSite));
-            thread.setName("IndexingThread-" + configSite.getName());
-            thread.start();
-            threads.add(thread);
+            crawlExecutor.configureSite(configSite.getUrl(), configSite.getWeight(), configSite.getMaxThreads());
+            siteCrawls.add(handleSiteIndexing(configSite));
         }
-        return threads;
+        return siteCrawls;
     }
 
-    // Обработка одного сайта
-    private void handleSiteIndexing(Site configSite) {
-        SiteModel siteModel = null;
-        try {
-            removeOldSiteData(configSite);
+    // Обработка одного сайта: подготовка, обход и завершение — задачи в очереди сайта в общем пуле
+    private CompletableFuture<Void> handleSiteIndexing(Site configSite) {
+        Executor siteExecutor = crawlExecutor.forSite(configSite.getUrl());
+        return CompletableFuture.supplyAsync(() -> prepareSiteCrawl(configSite), siteExecutor)
+                .thenCompose(siteCrawl -> processPages(siteCrawl, siteExecutor))
+                .thenAccept(siteModel -> {
+                    // Обход, прерванный остановкой, не считается завершённым
+                    if (!isIndexingRunning.get()) {
+                        updateSiteStatusAndError(siteModel, IndexStatus.FAILED, STOPPED_BY_USER);
+                        log.info("Индексация {} остановлена", configSite.getUrl());
+                        return;
+                    }
+                    updateSiteStatus(siteModel, IndexStatus.INDEXED);
+                    log.info("✅ Индексация завершена для {}", configSite.getUrl());
+                })
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    String error = isIndexingRunning.get() ? cause.getMessage() : STOPPED_BY_USER;
+                    if (isIndexingRunning.get()) {
+                        log.error("Ошибка при обработке сайта {}: {}", configSite.getUrl(), cause.getMessage());
+                    }
+                    siteRepository.findByUrl(configSite.getUrl())
+                            .ifPresent(siteModel -> updateSiteStatusAndError(siteModel, IndexStatus.FAILED, error));
+                    return null;
+                });
+    }
 
+    // Загрузка контрольной точки, robots.txt и sitemap; блокирует один поток пула из доли сайта
+    private SiteCrawl prepareSiteCrawl(Site configSite) {
+        // Время бюджета отсчитывается с начала подготовки: загрузка robots.txt и sitemap — часть обхода
+        CrawlBudget budget = createBudget(configSite);
+        SiteModel siteModel;
+        Optional<SiteModel> existingSite = siteRepository.findByUrl(configSite.getUrl());
+        Optional<CrawlCheckpointModel> checkpoint = existingSite
+                .filter(site -> crawlerProperties.getCheckpoint().isResume())
+                .flatMap(checkpointService::findCheckpoint);
+        UrlFrontier frontier = createFrontier();
+        RobotsRules robotsRules = crawlSeeder.loadRobotsRules(configSite.getUrl());
+        Map<String, PageValidators> knownPages;
+
+        if (checkpoint.isPresent()) {
+            // Прерванный обход продолжаем с контрольной точки, сохранённые страницы заново не загружаем
+            siteModel = existingSite.get();
+            siteModel.setLastError(null);
+            updateSiteStatus(siteModel, IndexStatus.INDEXING);
+            knownPages = resumeFromCheckpoint(siteModel, checkpoint.get(), frontier);
+        } else if (crawlerProperties.isIncrementalRecrawl() && existingSite.isPresent()) {
+            // Повторный обход: старые данные не удаляем, страницы проверяем условными запросами
+            siteModel = existingSite.get();
+            siteModel.setLastError(null);
+            updateSiteStatus(siteModel, IndexStatus.INDEXING);
+            knownPages = loadKnownPages(siteModel);
+            seedFrontier(siteModel, frontier, knownPages, robotsRules);
+        } else {
+            removeOldSiteData(configSite);
             siteModel = createNewSiteModel(configSite);
-            processPages(siteModel);
-            updateSiteStatus(siteModel, IndexStatus.INDEXED);
-
-            log.info("✅ Индексация завершена для {}", configSite.getUrl());
-        } catch (Exception e) {
-            log.error("Ошибка при обработке сайта {}: {}", configSite.getUrl(), e.getMessage());
-            if (siteModel != null) {
-                updateSiteStatusAndError(siteModel, IndexStatus.FAILED, e.getMessage());
-            }
+            knownPages = Map.of();
+            seedFrontier(siteModel, frontier, knownPages, robotsRules);
         }
+        return new SiteCrawl(siteModel, frontier, knownPages, robotsRules, budget);
+    }
+
+    // Бюджет сайта из indexing-settings, а если он там не задан — из crawler.budget
+    private CrawlBudget createBudget(Site configSite) {
+        CrawlerProperties.Budget defaults = crawlerProperties.getBudget();
+        return new CrawlBudget(
+                Optional.ofNullable(configSite.getMaxPages()).orElse(defaults.getMaxPages()),
+                Optional.ofNullable(configSite.getMaxCrawlDuration()).orElse(defaults.getMaxDuration()));
     }
 
     // Удаление старых данных
     private void removeOldSiteData(Site configSite) {
-        Optional<SiteModel> existingSiteOpt = siteRepository.findByUrl(configSite.getUrl());
-        if (existingSiteOpt.isPresent()) {
-            SiteModel existingSite = existingSiteOpt.get();
-            pageRepository.findAllBySiteModel(existingSite)
-                    .forEach(lemmaService :: removeLemmasAndIndexesForPage);
-            siteRepository.deleteByUrl(configSite.getUrl());
-            pageRepository.deleteBySiteModelUrl(configSite.getUrl());
-            log.info("Удалены старые данные для {}", configSite.getUrl());
+        siteRepository.findByUrl(configSite.getUrl()).ifPresent(sitePurgeService::purgeSite);
+    }
+
+    // Валидаторы всех сохранённых страниц сайта, без загрузки их содержимого
+    private Map<String, PageValidators> loadKnownPages(SiteModel siteModel) {
+        Map<String, PageValidators> knownPages = new HashMap<>();
+        for (PageValidators page : pageRepository.findValidatorsBySiteModel(siteModel)) {
+            knownPages.put(page.getPath(), page);
         }
+        log.info("Повторный обход {}: в базе {} страниц", siteModel.getUrl(), knownPages.size());
+        return knownPages;
+    }
+
+    // Очередь для продолжения обхода: страницы, сохранённые до контрольной точки, сразу отмечаются посещёнными.
+    // Сохранённые позже загружаются повторно без условных заголовков — их ссылки могли не попасть в точку,
+    // а совпавший хэш содержимого не даст перезаписать страницу и её индекс
+    private Map<String, PageValidators> resumeFromCheckpoint(SiteModel siteModel, CrawlCheckpointModel checkpoint, UrlFrontier frontier) {
+        int lastPageId = checkpoint.getLastPageId() == null ? 0 : checkpoint.getLastPageId();
+        Map<String, PageValidators> recentPages = new HashMap<>();
+        int storedPages = 0;
+        for (PageValidators page : pageRepository.findValidatorsBySiteModel(siteModel)) {
+            if (page.getId() > lastPageId) {
+                recentPages.put(page.getPath(), new UnconditionalPage(page));
+            } else {
+                frontier.markVisited(page.getPath());
+                storedPages++;
+            }
+        }
+
+        List<FrontierEntry> pendingUrls = checkpointService.loadPendingUrls(siteModel);
+        pendingUrls.forEach(entry -> frontier.offer(entry.getPath(), entry.getUrl(), entry.getDepth()));
+        String baseUrl = siteModel.getUrl().replaceAll("/+$", "");
+        recentPages.keySet().forEach(path -> frontier.offer(path, baseUrl + path, 0));
+
+        log.info("Продолжение обхода {} с контрольной точки от {}: пропущено сохранённых страниц {}, в очереди {}, перепроверяется {}",
+                siteModel.getUrl(), checkpoint.getSavedAt(), storedPages, frontier.size(), recentPages.size());
+        // Прибавки частот, не сброшенные до остановки, потеряны — частоты восстанавливаются по index
+        frequencyCounter.recountSite(siteModel.getId());
+        return recentPages;
     }
 
     // Создание новой записи сайта
@@ -135,21 +267,16 @@ public class IndexingServiceImpl implements IndexingService{
         return siteModel;
     }
 
-    // Ожидание завершения потоков
-    private void waitForThreadsToFinish(List<Thread> threads) throws InterruptedException {
-        for (Thread thread : threads) {
-            thread.join();
+    // Ожидание завершения обхода всех сайтов
+    private void waitForSitesToFinish(List<CompletableFuture<Void>> siteCrawls) throws InterruptedException {
+        try {
+            CompletableFuture.allOf(siteCrawls.toArray(new CompletableFuture<?>[0])).get();
+        } catch (ExecutionException e) {
+            log.error("Ошибка при ожидании завершения индексации: {}", e.getMessage());
         }
     }
 
 
-
-    private boolean hasActiveThread(List<Thread> threads) {
-        return threads.stream()
-                .anyMatch(thread -> thread.isAlive());
-    }
-
-
     // Остановка индексации
     @Override
     @Transactional
@@ -162,27 +289,59 @@ public class IndexingServiceImpl implements IndexingService{
         }
 
         log.info("Остановка индексации...");
+        long stopRequestedAt = System.nanoTime();
         isIndexingRunning.set(false);
 
+        // Не ждём таймеров и ответов серверов: ожидания вежливости и запросы обходов в полёте отменяются сразу,
+        // конвейер пропускает оставшиеся страницы без разбора и сохранения; загрузка одной страницы продолжается
+        int cancelledPermits = politenessScheduler.cancelPendingPermits();
+        int cancelledRequests = activeCrawlers.keySet().stream().mapToInt(pageFetcher::cancelCrawl).sum();
+        List<SiteCrawler> stoppingCrawlers = new ArrayList<>(activeCrawlers.values());
+
         // Получаем список сайтов, которые находятся в процессе индексации
         List<SiteModel> indexingSites = siteRepository.findByStatus(IndexStatus.INDEXING);
 
         // Обновляем статус всех сайтов в процессе индексации
         for (SiteModel site : indexingSites) {
-            updateSiteStatusAndError(site, IndexStatus.FAILED, "Индексация остановлена пользователем");
+            updateSiteStatusAndError(site, IndexStatus.FAILED, STOPPED_BY_USER);
+        }
+
+        boolean stopped = awaitSiteCrawls(crawlerProperties.getStopTimeoutMs());
+        long stopNanos = System.nanoTime() - stopRequestedAt;
+        long abandonedPages = stoppingCrawlers.stream().mapToLong(SiteCrawler::getAbandonedCount).sum();
+        crawlMetrics.recordStop(stopNanos, abandonedPages);
+        log.info("Индексация остановлена за {} мс: отменено ожиданий {}, прервано запросов {}, брошено страниц в работе {}",
+                TimeUnit.NANOSECONDS.toMillis(stopNanos), cancelledPermits, cancelledRequests, abandonedPages);
+        if (!stopped) {
+            log.warn("Обход не завершился за {} мс, оставшиеся задачи завершатся в фоне", crawlerProperties.getStopTimeoutMs());
         }
 
         return Map.of("result", true);
     }
 
 
+    // Ожидание завершения обходов после остановки, не дольше заданного срока
+    private boolean awaitSiteCrawls(long timeoutMs) {
+        try {
+            CompletableFuture.allOf(runningSiteCrawls.toArray(new CompletableFuture<?>[0])).get(timeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        }
+    }
+
     // Индексация одной веб-страницы
     @Override
     @Transactional
     public void indexPage(String url) throws Exception {
         // Проверяем, что URL принадлежит одному из сайтов из конфигурации
         Optional<Site> optionalSiteConfig = sitesList.getSites().stream()
-                .filter(site -> url.startsWith(site.getUrl()))
+                .filter(site -> urlCanonicalizer.isSameSite(url, site.getUrl()))
                 .findFirst();
 
         if (optionalSiteConfig.isEmpty()) {
@@ -202,7 +361,8 @@ public class IndexingServiceImpl implements IndexingService{
                     return siteRepository.save(newSite);
                 });
 
-        String relativePath = getRelativePath(url, siteModel.getUrl());
+        String canonicalUrl = urlCanonicalizer.canonicalize(url);
+        String relativePath = urlCanonicalizer.toPath(canonicalUrl, siteModel.getUrl());
         if (relativePath == null) {
             throw new IllegalArgumentException("Невозможно получить относительный путь страницы");
         }
@@ -211,21 +371,35 @@ public class IndexingServiceImpl implements IndexingService{
         Optional<PageModel> optionalOldPage = pageRepository.findByPathAndSiteModel(relativePath, siteModel);
         optionalOldPage.ifPresent(lemmaService::removeLemmasAndIndexesForPage);
 
-        // Загружаем и сохраняем содержимое страницы
-        String content = fetchPageContentWithDelay(url);
-        int code = getResponseCode(url);
+        // Загружаем страницу одним запросом: код ответа и содержимое из одного обмена
+        FetchResult fetchResult = fetchPageWithDelay(canonicalUrl, siteModel.getUrl());
 
         PageModel page = optionalOldPage.orElse(new PageModel());
         page.setSiteModel(siteModel);
         page.setPath(relativePath);
-        page.setContent(content);
-        page.setCode(code);
+        page.setContent(fetchResult.getBody());
+        page.setCode(fetchResult.getStatusCode());
+        page.setEtag(fetchResult.getEtag());
+        page.setLastModified(fetchResult.getLastModified());
+        page.setContentHash(ContentFingerprint.sha256(fetchResult.getBody()));
+
+        // Разбираем HTML один раз и сохраняем результат: поиск больше не обращается к content
+        boolean indexable = fetchResult.isSuccessful() && fetchResult.isHtml() && !fetchResult.isSkipped();
+        ParsedPage parsedPage = indexable ? HtmlPageParser.parse(fetchResult.getBody(), fetchResult.getFinalUrl()) : null;
+        page.setTitle(parsedPage == null ? null : parsedPage.getTitle());
+        page.setHeadings(parsedPage == null ? null : parsedPage.getHeadings());
+        page.setPlainText(parsedPage == null ? null : parsedPage.getText());
+        // Явно запрошенная страница индексируется всегда, даже если совпадает с другой
+        page.setSimhash(parsedPage == null ? null : ContentFingerprint.simHash(ContentFingerprint.words(parsedPage.getText())));
+        page.setDuplicateOf(null);
 
         pageRepository.save(page);
 
 
-        // Обработка лемм и индексов
-        lemmaService.processPageContent(page);
+        // Обработка лемм и индексов (страницы с кодом ошибки не индексируем)
+        if (indexable) {
+            lemmaService.processPageContent(page);
+        }
 
         // Обновление статуса сайта
         updateSiteStatus(siteModel, IndexStatus.INDEXED);
@@ -234,34 +408,140 @@ public class IndexingServiceImpl implements IndexingService{
     }
 
 
-    @Transactional
-    private void processPages(SiteModel siteModel) {
-        // Используем потокобезопасную очередь
-        ConcurrentLinkedDeque<String> urlQueue = new ConcurrentLinkedDeque<>();
-        urlQueue.add(siteModel.getUrl());
+    // Одна общая очередь и множество посещённых адресов на весь обход сайта
+    private UrlFrontier createFrontier() {
+        return new UrlFrontier(crawlerProperties.getFrontier());
+    }
 
-        ForkJoinPool pool = new ForkJoinPool();
+    // Отпечатки уже сохранённых страниц сайта: копии узнаются и при повторном обходе
+    private DuplicateIndex createDuplicateIndex(SiteModel siteModel) {
+        DuplicateIndex duplicateIndex = new DuplicateIndex(crawlerProperties.getDedup().getMaxHammingDistance());
+        if (crawlerProperties.getDedup().isEnabled()) {
+            for (PageFingerprint page : pageRepository.findFingerprintsBySiteModel(siteModel)) {
+                duplicateIndex.add(page.getPath(), null, page.getSimhash());
+            }
+        }
+        return duplicateIndex;
+    }
 
-        // 1 замечание исправлено. Исправлена проблема с инкрементацией currentDepth.
-        // Создаем задачу с начальной глубиной 0
-        PageProcessorTask task = new PageProcessorTask(urlQueue, siteModel, httpClient, pageRepository, siteRepository, crawlerSettings, isIndexingRunning, lemmaService, crawlerProperties , 0);
+    private void seedFrontier(SiteModel siteModel, UrlFrontier frontier, Map<String, PageValidators> knownPages, RobotsRules robotsRules) {
+        frontier.offer("/", siteModel.getUrl(), 0);
+        // Глубокие страницы из sitemap попадают в очередь сразу, без прохода по цепочке ссылок
+        crawlSeeder.seedFromSitemaps(siteModel, robotsRules, frontier, isIndexingRunning);
 
-        pool.invoke(task);
+        // При повторном обходе все известные страницы перепроверяются, даже если ссылки на них не изменились
+        String baseUrl = siteModel.getUrl().replaceAll("/+$", "");
+        knownPages.keySet().forEach(path -> frontier.offer(path, baseUrl + path, 0));
     }
-    private int getResponseCode(String url) {
+
+    // Запускает обход сайта; ни один поток пула не ждёт его окончания — завершение выполняется отдельной задачей
+    private CompletableFuture<SiteModel> processPages(SiteCrawl siteCrawl, Executor siteExecutor) {
+        SiteModel siteModel = siteCrawl.siteModel;
+        UrlFrontier frontier = siteCrawl.frontier;
+        Map<String, PageValidators> knownPages = siteCrawl.knownPages;
+        CrawlContext context = new CrawlContext(siteModel, frontier, pageFetcher, pageRepository, siteRepository,
+                crawlerSettings, crawlerProperties, lemmaService, textAnalyzer, isIndexingRunning, knownPages,
+                siteCrawl.robotsRules, urlCanonicalizer, crawlMetrics, createDuplicateIndex(siteModel), pageWriteBuffer);
+        CrawlErrorBudget errorBudget = new CrawlErrorBudget(crawlerProperties.getErrorBudget());
+        CrawlPipeline pipeline = new CrawlPipeline(context, crawlExecutor, errorBudget);
+        activePipelines.put(siteModel.getUrl(), pipeline);
+        crawlMetrics.registerSite(siteModel.getUrl(), frontier);
+        long startedAt = System.nanoTime();
+        pipeline.start();
+
+        SiteCrawler crawler = new SiteCrawler(context, politenessScheduler, pipeline, crawlerProperties.getMaxInFlightPerSite(),
+                siteCrawl.budget);
+        activeCrawlers.put(siteModel.getUrl(), crawler);
+        boolean checkpointsEnabled = crawlerProperties.getCheckpoint().isEnabled();
+        ScheduledFuture<?> checkpointTask = checkpointsEnabled
+                ? checkpointService.schedulePeriodicCheckpoint(siteModel, () -> {
+                    // Страница уходит из очереди обхода, как только попала в буфер записи: всё, что попало
+                    // в буфер до снимка очереди, записывается в базу раньше контрольной точки — вместе
+                    // с прибавками частот её лемм, которые копятся в памяти до сброса
+                    List<FrontierEntry> pending = crawler.pendingEntries();
+                    pageWriteBuffer.flush();
+                    frequencyCounter.flush();
+                    return pending;
+                }) : null;
+        return crawler.crawl()
+                .whenCompleteAsync((ignored, error) -> {
+                    if (checkpointTask != null) {
+                        checkpointTask.cancel(false);
+                    }
+                    pipeline.shutdown();
+                    activePipelines.remove(siteModel.getUrl());
+                    activeCrawlers.remove(siteModel.getUrl());
+                    crawlMetrics.unregisterSite(siteModel.getUrl());
+                    crawlMetrics.recordSiteCrawl(siteModel.getUrl(), System.nanoTime() - startedAt);
+                }, siteExecutor)
+                .thenApply(ignored -> {
+                    finishCrawl(siteModel, frontier, knownPages, crawler, pipeline, siteCrawl.budget);
+                    // Отдельные неудачные страницы сайт не проваливают; FAILED — только при превышении бюджета ошибок
+                    if (errorBudget.isExceededAtEnd() && isIndexingRunning.get()) {
+                        throw new IndexingException(errorBudget.describe());
+                    }
+                    return siteModel;
+                });
+    }
+
+    private void finishCrawl(SiteModel siteModel, UrlFrontier frontier, Map<String, PageValidators> knownPages,
+                             SiteCrawler crawler, CrawlPipeline pipeline, CrawlBudget budget) {
+        // Страницы из буфера записи попадают в базу до контрольной точки и сверки словаря лемм
+        pageWriteBuffer.flush();
+        boolean checkpointsEnabled = crawlerProperties.getCheckpoint().isEnabled();
+        if (checkpointsEnabled) {
+            if (isIndexingRunning.get()) {
+                checkpointService.clearCheckpoint(siteModel);
+            } else {
+                // Индексацию остановили: сохраняем остаток очереди, чтобы следующий запуск продолжил обход
+                checkpointService.saveCheckpoint(siteModel, crawler.pendingEntries());
+            }
+        }
+
+        log.info("Очередь обхода {}: поставлено {}, отсечено дубликатов {}, запрещено robots.txt {}",
+                siteModel.getUrl(), frontier.getEnqueuedCount(), frontier.getDuplicatesSuppressed(), crawler.getRobotsDisallowed());
+        if (budget.isExhausted() && isIndexingRunning.get()) {
+            log.info("Бюджет обхода {} исчерпан: загружено {} страниц, осталось в очереди {}",
+                    siteModel.getUrl(), budget.getPagesUsed().get(), crawler.pendingEntries().size());
+        }
+        log.info("Загрузка {}: повторов после временных сбоев {}, неудачных страниц {}",
+                siteModel.getUrl(), crawler.getRetries(), pipeline.getErrorBudget().getErrors());
+        log.info("Фактическая частота запросов по хостам: {}", politenessScheduler.getRequestsPerSecond());
+        String host = URI.create(siteModel.getUrl()).getHost();
+        log.info("Подстройка под хост {}: интервал {} мс, одновременных запросов {}",
+                host, politenessScheduler.getDelayMillis(host), politenessScheduler.getConcurrencyLimit(host));
+        PageFetcher.TransferStatistics transfer = pageFetcher.getTransferStatistics(host);
+        log.info("Передача {}: по сети {} байт, после распаковки {} байт (сжатие {}x); прервано по типу содержимого {}, по размеру {}",
+                siteModel.getUrl(), transfer.getWireBytes(), transfer.getDecodedBytes(), String.format("%.1f", transfer.getCompressionRatio()),
+                pageFetcher.getSkippedByContentType(), pageFetcher.getSkippedBySize());
+        log.info("Канонизация адресов {}: сэкономлено загрузок {} (иные написания {}, rel=canonical и редиректы {}), копий не сохранено {}",
+                siteModel.getUrl(), pipeline.getCollapsedSpellings() + pipeline.getCanonicalRekeyed(),
+                pipeline.getCollapsedSpellings(), pipeline.getCanonicalRekeyed(), pipeline.getCanonicalDuplicates());
+        log.info("Копии страниц {}: с тем же текстом {}, близких по SimHash {} — сохранены без индексации",
+                siteModel.getUrl(), pipeline.getExactDuplicates(), pipeline.getNearDuplicates());
+        if (!knownPages.isEmpty()) {
+            log.info("Повторный обход {}: не изменились (304) {}, тот же хэш {}, обновлены {}",
+                    siteModel.getUrl(), pipeline.getNotModifiedPages(), pipeline.getUnchangedPages(), pipeline.getChangedPages());
+        }
+        // Частоты лемм пересчитываются по index, строки лемм без страниц удаляются, и словарь сайта сверяется с базой
         try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
-                    .build();
-
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            return response.statusCode();
-        } catch (IOException | InterruptedException e) {
-            log.warn("Не удалось получить код ответа для URL {}: {}", url, e.getMessage());
-            Thread.currentThread().interrupt();
-            return 0;
+            int removed = frequencyCounter.recountSite(siteModel.getId());
+            log.debug("Удалено лемм без страниц {}: {}", siteModel.getUrl(), removed);
+        } catch (DataAccessException e) {
+            log.warn("Частоты лемм {} не пересчитаны, словарь не перечитан: {}", siteModel.getUrl(), e.getMessage());
         }
+        log.info("Словарь лемм: доля обращений без запроса к базе {}", String.format("%.2f", lemmaCache.getHitRatio()));
+        pipeline.getStatistics().forEach(stage -> log.info("Стадия {} сайта {}: обработано {}, {} стр/с, в среднем {} мс",
+                stage.getStage(), siteModel.getUrl(), stage.getProcessed(),
+                String.format("%.2f", stage.getThroughput()), String.format("%.1f", stage.getAverageMillis())));
+    }
+
+    // Глубина очередей и пропускная способность стадий для идущих сейчас обходов
+    @Override
+    public List<PipelineStageStatistics> getPipelineStatistics() {
+        List<PipelineStageStatistics> statistics = new ArrayList<>();
+        activePipelines.values().forEach(pipeline -> statistics.addAll(pipeline.getStatistics()));
+        return statistics;
     }
 
     public void updateSiteStatusTime(SiteModel site) {
@@ -283,73 +563,73 @@ public class IndexingServiceImpl implements IndexingService{
         siteRepository.save(site);
     }
 
-    // Метод для вычисления относительного пути страницы
-    private String getRelativePath(String absoluteUrl, String baseUrl) {
+    // Ждём слот планировщика вежливости для хоста страницы и загружаем её
+    private FetchResult fetchPageWithDelay(String url, String siteUrl) {
+        String host = URI.create(url).getHost();
+        long requestedAt = System.nanoTime();
+        politenessScheduler.acquire(host).join();
+        long sentAt = System.nanoTime();
+        crawlMetrics.recordPolitenessWait(siteUrl, sentAt - requestedAt);
         try {
-            URI baseUri = new URI(baseUrl.endsWith("/") ? baseUrl : baseUrl + "/");
-            URI absoluteUri = new URI(absoluteUrl);
+            FetchResult fetchResult = pageFetcher.fetch(url);
+            crawlMetrics.recordFetch(siteUrl, fetchResult, null, System.nanoTime() - sentAt);
+            return fetchResult;
+        } catch (RuntimeException e) {
+            crawlMetrics.recordFetch(siteUrl, null, e, System.nanoTime() - sentAt);
+            throw e;
+        }
+    }
 
-            if (!Objects.equals(baseUri.getHost(), absoluteUri.getHost())) {
-                return null;
-            }
+    // Подготовленный к обходу сайт: запись в базе, очередь, известные страницы, правила robots.txt и бюджет
+    private static final class SiteCrawl {
+        private final SiteModel siteModel;
+        private final UrlFrontier frontier;
+        private final Map<String, PageValidators> knownPages;
+        private final RobotsRules robotsRules;
+        private final CrawlBudget budget;
+
+        private SiteCrawl(SiteModel siteModel, UrlFrontier frontier, Map<String, PageValidators> knownPages, RobotsRules robotsRules,
+                          CrawlBudget budget) {
+            this.siteModel = siteModel;
+            this.frontier = frontier;
+            this.knownPages = knownPages;
+            this.robotsRules = robotsRules;
+            this.budget = budget;
+        }
+    }
 
-            String basePath = baseUri.getPath();
-            String absPath = absoluteUri.getPath();
+    // Страница, сохранённая после контрольной точки: загружается без условных заголовков, хэш сравнивается как обычно
+    private static final class UnconditionalPage implements PageValidators {
 
-            if (absPath.startsWith(basePath)) {
-                return absPath.substring(basePath.length() - 1);
-            } else {
-                return absPath;
-            }
-        } catch (URISyntaxException e) {
-            throw new RuntimeException("Ошибка при обработке URL: " + e.getMessage());
+        private final PageValidators page;
+
+        private UnconditionalPage(PageValidators page) {
+            this.page = page;
         }
-    }
 
-    // Добавьте, если используете fetchPageContentWithDelay из PageProcessorTask,
-    // либо реализуйте соответствующий метод здесь
-    private String fetchPageContentWithDelay(String url) {
-        try {
-            long delay = 500 + (long) (Math.random() * 4500);
-            Thread.sleep(delay);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException("Поток был прерван");
+        @Override
+        public Integer getId() {
+            return page.getId();
         }
-        return fetchPageContent(url);
-    }
 
-    // Новый метод
-    private String fetchPageContent(String url) {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .GET()
-                .header("User-Agent", Optional.ofNullable(crawlerSettings.getUserAgent())
-                        .orElse("Mozilla/5.0"))
-                .header("Referer", Optional.ofNullable(crawlerSettings.getReferrer())
-                        .orElse("https://www.google.com"))
-                .build();
+        @Override
+        public String getPath() {
+            return page.getPath();
+        }
 
-        try {
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() == 301 || response.statusCode() == 302) {
-                String location = response.headers().firstValue("Location").orElse("");
-                if (!location.isEmpty()) {
-                    return fetchPageContent(location);
-                }
-                throw new RuntimeException("Редирект без Location");
-            }
+        @Override
+        public String getEtag() {
+            return null;
+        }
 
-            if (response.statusCode() != 200) {
-                throw new RuntimeException("Ошибка при получении страницы: " + response.statusCode());
-            }
+        @Override
+        public String getLastModified() {
+            return null;
+        }
 
-            return response.body();
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException("Ошибка при получении содержимого страницы: " + e.getMessage());
+        @Override
+        public String getContentHash() {
+            return page.getContentHash();
         }
     }
 }
-
-
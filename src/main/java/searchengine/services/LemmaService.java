@@ -2,8 +2,15 @@ package searchengine.services;
 
 import searchengine.model.PageModel;
 
+import java.util.Map;
+
 public interface LemmaService {
     void processPageContent(PageModel page);
 
+    void saveLemmas(PageModel page, Map<String, Integer> lemmaCounts);
+
+    // Леммы нескольких страниц одним пакетом: страница → лемма → число вхождений
+    void saveLemmas(Map<PageModel, Map<String, Integer>> pages);
+
     void removeLemmasAndIndexesForPage(PageModel page);
 }
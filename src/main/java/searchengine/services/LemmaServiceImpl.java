@@ -1,86 +1,237 @@
 package searchengine.services;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import searchengine.exceptions.IndexingException;
 import searchengine.model.IndexModel;
 import searchengine.model.LemmaModel;
 import searchengine.model.PageModel;
+import searchengine.processors.HtmlPageParser;
+import searchengine.processors.LemmaCache;
+import searchengine.processors.LemmaFrequencyCounter;
 import searchengine.processors.TextAnalyzer;
 import searchengine.repository.IndexRepository;
-import searchengine.repository.LemmaRepository;
 
 import javax.transaction.Transactional;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
 
 @Service
 @RequiredArgsConstructor
 @Transactional
 public class LemmaServiceImpl implements LemmaService{
 
-    private final LemmaRepository lemmaRepository;
+    // Строк в одном многострочном INSERT/SELECT ... IN и в одном пакете JDBC
+    private static final int BATCH_SIZE = 500;
+
     private final IndexRepository indexRepository;
     private final TextAnalyzer textAnalyzer;
+    private final JdbcTemplate jdbcTemplate;
+    private final LemmaCache lemmaCache;
+    private final LemmaFrequencyCounter frequencyCounter;
 
     /**
      * Обрабатывает HTML-страницу: выделяет леммы, сохраняет в lemma и index таблицы.
+     * Если текст страницы ещё не выделен, HTML разбирается здесь.
      */
     @Override
     public void processPageContent(PageModel pageModel) {
-        String html = pageModel.getContent();
-        String clearText = textAnalyzer.clearHtml(html);
-
-        Map<String, Integer> lemmaCounts = textAnalyzer.analyseText(clearText);
-        Set<String> existingLemmas = new HashSet<>();
-
-        for (Map.Entry<String, Integer> entry : lemmaCounts.entrySet()) {
-            String lemmaText = entry.getKey();
-            int countOnPage = entry.getValue();
-
-            // Проверяем наличие леммы у сайта
-            Optional<LemmaModel> optionalLemma = lemmaRepository.findByLemmaAndSite(lemmaText, pageModel.getSiteModel());
-
-            LemmaModel lemmaModel;
-            if (optionalLemma.isEmpty()) {
-                // Если лемма новая – создаем и frequency = 1
-                lemmaModel = new LemmaModel();
-                lemmaModel.setLemma(lemmaText);
-                lemmaModel.setSite(pageModel.getSiteModel());
-                lemmaModel.setFrequency(1);
-            } else {
-                lemmaModel = optionalLemma.get();
-                // Если лемма уже была, но еще не встречалась на этой странице
-                if (!existingLemmas.contains(lemmaText)) {
-                    lemmaModel.setFrequency(lemmaModel.getFrequency() + 1);
-                }
+        String text = pageModel.getPlainText() != null
+                ? joinTitle(pageModel.getTitle(), pageModel.getPlainText())
+                : HtmlPageParser.parse(pageModel.getContent(), null).getIndexableText();
+
+        saveLemmas(pageModel, textAnalyzer.analyseText(text));
+    }
+
+    private static String joinTitle(String title, String text) {
+        return title == null || title.isEmpty() ? text : title + " " + text;
+    }
+
+    @Override
+    public void saveLemmas(PageModel pageModel, Map<String, Integer> lemmaCounts) {
+        saveLemmas(Map.of(pageModel, lemmaCounts));
+    }
+
+    /**
+     * Сохраняет уже подсчитанные леммы страниц в lemma и index таблицы пакетами, а не по строке на лемму:
+     * id известных лемм берутся из {@link LemmaCache}, новые леммы вставляются многострочным
+     * INSERT ... ON DUPLICATE KEY UPDATE по ключу (site_id, lemma) и читаются одним SELECT ... IN,
+     * строки index всех страниц сайта уходят пакетной вставкой JDBC в порядке id лемм.
+     * Частоты строк lemma здесь не меняются: после фиксации транзакции прибавки уходят
+     * в {@link LemmaFrequencyCounter} и словарь, а в базу попадают при очередном сбросе.
+     */
+    @Override
+    public void saveLemmas(Map<PageModel, Map<String, Integer>> pages) {
+        Map<Integer, Map<PageModel, Map<String, Integer>>> pagesBySite = new HashMap<>();
+        pages.forEach((page, lemmaCounts) -> {
+            if (!lemmaCounts.isEmpty()) {
+                pagesBySite.computeIfAbsent(page.getSiteModel().getId(), id -> new HashMap<>()).put(page, lemmaCounts);
             }
+        });
+        pagesBySite.forEach(this::saveSiteLemmas);
+    }
 
-            lemmaRepository.save(lemmaModel);
-            existingLemmas.add(lemmaText); // Отмечаем, что лемма уже встречалась на этой странице
+    private void saveSiteLemmas(int siteId, Map<PageModel, Map<String, Integer>> pages) {
+        withSiteLock(siteId, () -> writeSiteLemmas(siteId, pages));
+    }
 
-            // Связка page-lemma -> index
-            IndexModel index = new IndexModel();
-            index.setPage(pageModel);
-            index.setLemma(lemmaModel);
-            index.setRank(countOnPage);
-            indexRepository.save(index);
+    /**
+     * Выполняет изменение строк index сайта под блокировкой чтения до конца транзакции: пока оно не зафиксировано
+     * и его прибавки не дошли до счётчика, пересчёт частот сайта ждёт, а id из словаря остаются действительны.
+     */
+    private void withSiteLock(int siteId, Runnable action) {
+        Lock lock = lemmaCache.getSiteLock(siteId).readLock();
+        lock.lock();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            unlockAfterCompletion(lock);
+            action.run();
+            return;
+        }
+        try {
+            action.run();
+        } finally {
+            lock.unlock();
         }
     }
 
-    @Override
-    public void removeLemmasAndIndexesForPage(PageModel page) {
-        List<IndexModel> indexModels = indexRepository.findAllByPage(page);
+    private void writeSiteLemmas(int siteId, Map<PageModel, Map<String, Integer>> pages) {
+        Set<String> allLemmas = new TreeSet<>();
+        pages.values().forEach(lemmaCounts -> allLemmas.addAll(lemmaCounts.keySet()));
+        List<String> lemmas = new ArrayList<>(allLemmas);
+
+        Map<String, LemmaCache.CachedLemma> cached = lemmaCache.getAll(siteId, lemmas);
+        List<String> missing = lemmas.stream().filter(lemma -> !cached.containsKey(lemma)).toList();
+        insertMissingLemmas(siteId, missing);
+        Map<String, LemmaRow> loaded = findLemmas(siteId, missing);
+
+        // Столбец lemma сравнивается побайтово (utf8mb4_bin): каждой лемме соответствует ровно одна строка
+        Map<String, LemmaRow> rows = new HashMap<>(lemmas.size() * 2);
+        cached.forEach((lemma, cachedLemma) -> rows.put(lemma, new LemmaRow(cachedLemma.getId(), lemma, 0)));
+        rows.putAll(loaded);
+        List<String> unresolved = missing.stream().filter(lemma -> !rows.containsKey(lemma)).toList();
+        if (!unresolved.isEmpty()) {
+            throw new IndexingException("Строки lemma сайта " + siteId + " не найдены после вставки: " + unresolved);
+        }
 
-        for (IndexModel index : indexModels) {
-            LemmaModel lemma = index.getLemma();
-            lemma.setFrequency(lemma.getFrequency() - 1);
+        List<Object[]> indexRows = new ArrayList<>();
+        // Число страниц пакета с каждой леммой — прибавка к её частоте
+        Map<LemmaRow, Integer> pageCounts = new HashMap<>();
+        pages.forEach((page, lemmaCounts) -> lemmaCounts.forEach((lemma, count) -> {
+            LemmaRow row = rows.get(lemma);
+            indexRows.add(new Object[]{page.getId(), row.id, count.floatValue()});
+            pageCounts.merge(row, 1, Integer::sum);
+        }));
+        // Тот же порядок, в котором сброс частот обновляет строки lemma
+        indexRows.sort(Comparator.<Object[]>comparingInt(row -> (Integer) row[1]).thenComparingInt(row -> (Integer) row[0]));
+        jdbcTemplate.batchUpdate("INSERT INTO indexes (page_id, lemma_id, rank_val) VALUES (?, ?, ?)",
+                indexRows, BATCH_SIZE, (statement, row) -> {
+                    statement.setInt(1, (Integer) row[0]);
+                    statement.setInt(2, (Integer) row[1]);
+                    statement.setFloat(3, (Float) row[2]);
+                });
 
-            if (lemma.getFrequency() <= 0) {
-                lemmaRepository.delete(lemma);
-            } else {
-                lemmaRepository.save(lemma);
+        afterCommit(() -> {
+            // Строка, прочитанная из базы, не содержит ещё не сброшенных прибавок других страниц
+            loaded.values().forEach(row -> lemmaCache.put(siteId, row.lemma, row.id,
+                    (int) (row.frequency + frequencyCounter.getPending(row.id))));
+            pageCounts.forEach((row, count) -> {
+                frequencyCounter.add(siteId, row.id, count);
+                lemmaCache.addFrequency(siteId, row.lemma, count);
+            });
+        });
+    }
+
+    // Строки для лемм, которых нет в словаре; уже существующие не меняются
+    private void insertMissingLemmas(int siteId, List<String> lemmas) {
+        for (List<String> chunk : chunks(lemmas)) {
+            String values = String.join(", ", Collections.nCopies(chunk.size(), "(?, ?, 0)"));
+            List<Object> args = new ArrayList<>(chunk.size() * 2);
+            chunk.forEach(lemma -> {
+                args.add(siteId);
+                args.add(lemma);
+            });
+            jdbcTemplate.update("INSERT INTO lemma (site_id, lemma, frequency) VALUES " + values
+                    + " ON DUPLICATE KEY UPDATE frequency = frequency", args.toArray());
+        }
+    }
+
+    // Леммы сайта, которых нет в словаре, одним запросом на каждые BATCH_SIZE лемм страницы
+    private Map<String, LemmaRow> findLemmas(int siteId, List<String> lemmas) {
+        Map<String, LemmaRow> rows = new HashMap<>(lemmas.size() * 2);
+        for (List<String> chunk : chunks(lemmas)) {
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            List<Object> args = new ArrayList<>(chunk.size() + 1);
+            args.add(siteId);
+            args.addAll(chunk);
+            jdbcTemplate.query("SELECT id, lemma, frequency FROM lemma WHERE site_id = ? AND lemma IN (" + placeholders + ")",
+                    resultSet -> {
+                        LemmaRow row = new LemmaRow(resultSet.getInt("id"), resultSet.getString("lemma"), resultSet.getInt("frequency"));
+                        rows.put(row.lemma, row);
+                    }, args.toArray());
+        }
+        return rows;
+    }
+
+    // Частоты и словарь меняются только вместе с базой: при откате транзакции изменения до них не доходят
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    // Снимается после фиксации или отката транзакции — и после обновления словаря в afterCommit
+    private static void unlockAfterCompletion(Lock lock) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                lock.unlock();
             }
+        });
+    }
+
+    private static List<List<String>> chunks(List<String> values) {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int from = 0; from < values.size(); from += BATCH_SIZE) {
+            chunks.add(values.subList(from, Math.min(from + BATCH_SIZE, values.size())));
         }
+        return chunks;
+    }
 
-        indexRepository.deleteAllByPage(page);
+    // Строки lemma с нулевой частотой удаляются по окончании обхода сайта, когда на них не остаётся строк index
+    @Override
+    public void removeLemmasAndIndexesForPage(PageModel page) {
+        int siteId = page.getSiteModel().getId();
+        withSiteLock(siteId, () -> {
+            List<IndexModel> indexModels = indexRepository.findAllByPage(page);
+            List<LemmaModel> lemmas = indexModels.stream().map(IndexModel::getLemma).toList();
+
+            indexRepository.deleteAllByPage(page);
+            afterCommit(() -> lemmas.forEach(lemma -> {
+                frequencyCounter.add(siteId, lemma.getId(), -1);
+                lemmaCache.addFrequency(siteId, lemma.getLemma(), -1);
+            }));
+        });
+    }
+
+    private static final class LemmaRow {
+        private final int id;
+        private final String lemma;
+        private final int frequency;
+
+        private LemmaRow(int id, String lemma, int frequency) {
+            this.id = id;
+            this.lemma = lemma;
+            this.frequency = frequency;
+        }
     }
 }
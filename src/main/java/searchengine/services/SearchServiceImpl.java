@@ -12,6 +12,10 @@ import searchengine.model.IndexModel;
 import searchengine.model.LemmaModel;
 import searchengine.model.PageModel;
 import searchengine.model.SiteModel;
+import searchengine.processors.HtmlPageParser;
+import searchengine.processors.LemmaCache;
+import searchengine.processors.LemmaFrequencyCounter;
+import searchengine.processors.ParsedPage;
 import searchengine.processors.TextAnalyzer;
 import searchengine.repository.IndexRepository;
 import searchengine.repository.LemmaRepository;
@@ -36,6 +40,8 @@ public class SearchServiceImpl implements SearchService{
     private final PageRepository pageRepository;
     private final SiteRepository siteRepository;
     private final TextAnalyzer textAnalyzer;
+    private final LemmaCache lemmaCache;
+    private final LemmaFrequencyCounter frequencyCounter;
     @Override
     public SearchResponse search(String query, String siteUrl, int offset, int limit) {
         log.info("Поиск запроса '{}' для сайта '{}', offset={}, limit={}", query, siteUrl, offset, limit);
@@ -93,10 +99,13 @@ public class SearchServiceImpl implements SearchService{
     private List<LemmaModel> filterLemmasByFrequency(List<String> lemmas, List<SiteModel> sites) {
         List<LemmaModel> filteredLemmas = new ArrayList<>();
 
+        Map<SiteModel, Integer> totalPagesBySite = new HashMap<>();
+
         for (String lemmaText : lemmas) {
             for (SiteModel site : sites) {
-                lemmaRepository.findByLemmaAndSite(lemmaText, site).ifPresent(lemma -> {
-                    int totalPages = pageRepository.countBySiteModel(site);
+                // Строка с нулевой частотой ждёт удаления по окончании обхода — страниц с леммой нет
+                findLemma(lemmaText, site).filter(lemma -> lemma.getFrequency() > 0).ifPresent(lemma -> {
+                    int totalPages = totalPagesBySite.computeIfAbsent(site, pageRepository::countBySiteModel);
                     double frequencyRatio = (double) lemma.getFrequency() / totalPages;
 
                     if (frequencyRatio < LEMMA_FREQUENCY_THRESHOLD) {
@@ -111,6 +120,30 @@ public class SearchServiceImpl implements SearchService{
         return filteredLemmas;
     }
 
+    // Лемма сайта из словаря в памяти; промах читается из базы и попадает в словарь
+    private Optional<LemmaModel> findLemma(String lemmaText, SiteModel site) {
+        LemmaCache.CachedLemma cached = lemmaCache.get(site.getId(), lemmaText);
+        if (cached != null) {
+            return Optional.of(detachedLemma(cached.getId(), site, cached.getLemma(), cached.getFrequency()));
+        }
+        return lemmaRepository.findByLemmaAndSite(lemmaText, site).map(found -> {
+            // Частота в базе отстаёт на ещё не сброшенные прибавки
+            int frequency = (int) (found.getFrequency() + frequencyCounter.getPending(found.getId()));
+            lemmaCache.put(site.getId(), found.getLemma(), found.getId(), frequency);
+            return detachedLemma(found.getId(), site, found.getLemma(), frequency);
+        });
+    }
+
+    // Для запросов к index хватает id: сущность не загружается из базы и не отслеживается
+    private static LemmaModel detachedLemma(int id, SiteModel site, String lemmaText, int frequency) {
+        LemmaModel lemma = new LemmaModel();
+        lemma.setId(id);
+        lemma.setSite(site);
+        lemma.setLemma(lemmaText);
+        lemma.setFrequency(frequency);
+        return lemma;
+    }
+
     // Построение результатов
     private List<SearchResult> buildSearchResults(Map<PageModel, Float> relevanceMap, List<String> lemmas) {
         float maxRelevance = Collections.max(relevanceMap.values());
@@ -120,8 +153,15 @@ public class SearchServiceImpl implements SearchService{
             PageModel page = entry.getKey();
             float normalizedRelevance = entry.getValue() / maxRelevance;
 
-            String snippet = textAnalyzer.buildSnippet(page.getContent(), lemmas);
-            String title = textAnalyzer.extractTitle(page.getContent());
+            // Текст и заголовок выделены при индексации; страницы, сохранённые раньше, разбираем здесь
+            String text = page.getPlainText();
+            String title = page.getTitle();
+            if (text == null) {
+                ParsedPage parsedPage = HtmlPageParser.parse(page.getContent(), null);
+                text = parsedPage.getText();
+                title = parsedPage.getTitle();
+            }
+            String snippet = textAnalyzer.buildSnippet(text, lemmas);
 
             results.add(new SearchResult(
                     page.getSiteModel().getUrl(),
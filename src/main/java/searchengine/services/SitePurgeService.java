@@ -0,0 +1,9 @@
+package searchengine.services;
+
+import searchengine.model.SiteModel;
+
+public interface SitePurgeService {
+
+    // Удаляет сайт со всеми страницами, леммами, индексом и контрольной точкой; возвращает число удалённых строк
+    long purgeSite(SiteModel site);
+}
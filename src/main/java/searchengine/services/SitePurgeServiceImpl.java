@@ -0,0 +1,89 @@
+package searchengine.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.CrawlerProperties;
+import searchengine.model.SiteModel;
+import searchengine.processors.CrawlMetrics;
+import searchengine.processors.LemmaCache;
+import searchengine.processors.LemmaFrequencyCounter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Удаление данных сайта запросами DELETE по site_id вместо обхода страниц по одной через JPA.
+ * Таблицы очищаются в порядке зависимостей: index, page, lemma, контрольная точка, site.
+ * При {@code crawler.purge.chunk-size > 0} index и page удаляются порциями по столько страниц,
+ * каждая в своей транзакции, — блокировки не держатся всё время удаления большого сайта.
+ * Если удаление прервётся, оставшиеся строки удалит следующий запуск: каждый шаг можно повторить.
+ */
+@Service
+@Slf4j
+public class SitePurgeServiceImpl implements SitePurgeService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CrawlerProperties crawlerProperties;
+    private final CrawlMetrics crawlMetrics;
+    private final LemmaCache lemmaCache;
+    private final LemmaFrequencyCounter frequencyCounter;
+
+    public SitePurgeServiceImpl(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                CrawlerProperties crawlerProperties, CrawlMetrics crawlMetrics,
+                                LemmaCache lemmaCache, LemmaFrequencyCounter frequencyCounter) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.crawlerProperties = crawlerProperties;
+        this.crawlMetrics = crawlMetrics;
+        this.lemmaCache = lemmaCache;
+        this.frequencyCounter = frequencyCounter;
+    }
+
+    @Override
+    public long purgeSite(SiteModel site) {
+        long startedAt = System.nanoTime();
+        int siteId = site.getId();
+        // Несброшенные изменения частот относятся к удаляемым строкам lemma
+        frequencyCounter.discardSite(siteId);
+
+        int chunkSize = crawlerProperties.getPurge().getChunkSize();
+        long deleted = chunkSize > 0 ? deletePagesInChunks(siteId, chunkSize) : deletePages(siteId);
+        deleted += transactionTemplate.execute(status ->
+                jdbcTemplate.update("DELETE FROM lemma WHERE site_id = ?", siteId)
+                        + jdbcTemplate.update("DELETE FROM crawl_checkpoint_url WHERE site_id = ?", siteId)
+                        + jdbcTemplate.update("DELETE FROM crawl_checkpoint WHERE site_id = ?", siteId)
+                        + jdbcTemplate.update("DELETE FROM site WHERE id = ?", siteId));
+        lemmaCache.evictSite(siteId);
+
+        long durationNanos = System.nanoTime() - startedAt;
+        crawlMetrics.recordPurge(site.getUrl(), durationNanos);
+        log.info("Удалены старые данные {}: {} строк за {} мс", site.getUrl(), deleted, durationNanos / 1_000_000);
+        return deleted;
+    }
+
+    // Все страницы сайта и их строки index в одной транзакции
+    private long deletePages(int siteId) {
+        return transactionTemplate.execute(status ->
+                (long) jdbcTemplate.update("DELETE FROM indexes WHERE page_id IN (SELECT id FROM page WHERE site_id = ?)", siteId)
+                        + jdbcTemplate.update("DELETE FROM page WHERE site_id = ?", siteId));
+    }
+
+    // Страницы порциями по id: строки index порции, затем сами страницы
+    private long deletePagesInChunks(int siteId, int chunkSize) {
+        List<Integer> pageIds = jdbcTemplate.queryForList("SELECT id FROM page WHERE site_id = ? ORDER BY id", Integer.class, siteId);
+        long deleted = 0;
+        for (int from = 0; from < pageIds.size(); from += chunkSize) {
+            List<Integer> chunk = pageIds.subList(from, Math.min(from + chunkSize, pageIds.size()));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            Object[] args = chunk.toArray();
+            deleted += transactionTemplate.execute(status ->
+                    jdbcTemplate.update("DELETE FROM indexes WHERE page_id IN (" + placeholders + ")", args)
+                            + jdbcTemplate.update("DELETE FROM page WHERE id IN (" + placeholders + ")", args));
+        }
+        return deleted;
+    }
+}